@@ -0,0 +1,5 @@
+@echo off
+chcp 65001
+echo 正在扫描上传目录...
+java --add-modules jdk.incubator.vector -cp target/cryptalink-server-jar-with-dependencies.jar com.cryptalink.server.BatchScanner %*
+pause 
\ No newline at end of file
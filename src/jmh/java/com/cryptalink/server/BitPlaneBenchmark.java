@@ -0,0 +1,89 @@
+package com.cryptalink.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较提取整个最低位平面的三种方式：逐像素 getRGB 后按分量取最低位（LSBSteganography 逐位读取的路径）、
+ * {@link BitPlane} 的标量打包和 {@link VectorBitPlanePacker}。三者的结果写入同样的位图，可以直接比较。
+ *
+ * <p>运行方式见 pom.xml 中的 jmh 配置
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+public class BitPlaneBenchmark {
+    @Param({"1920x1080", "4000x3000"})
+    public String size;
+
+    private BufferedImage image;
+    private byte[] samples;
+    private long[] bits;
+    private VectorBitPlanePacker vectorPacker;
+
+    @Setup
+    public void setUp() {
+        int separator = size.indexOf('x');
+        int width = Integer.parseInt(size.substring(0, separator));
+        int height = Integer.parseInt(size.substring(separator + 1));
+        image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        samples = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        new Random(42).nextBytes(samples);
+        bits = new long[(samples.length + 63) >>> 6];
+        vectorPacker = new VectorBitPlanePacker();
+
+        // 三种方式的结果必须一致，否则比较没有意义
+        long[] expected = scalarPacker().clone();
+        if (!Arrays.equals(expected, vectorPacker()) || !Arrays.equals(expected, extractLsbLoop())) {
+            throw new IllegalStateException("位平面提取结果不一致");
+        }
+    }
+
+    @Benchmark
+    public long[] extractLsbLoop() {
+        Arrays.fill(bits, 0);
+        int width = image.getWidth();
+        int pixels = width * image.getHeight();
+        for (int i = 0; i < pixels; i++) {
+            int pixel = image.getRGB(i % width, i / width);
+            // 按底层样本顺序（B, G, R）写入，与打包实现的位图相同
+            for (int band = 0, shift = 0; band < 3; band++, shift += 8) {
+                int index = i * 3 + band;
+                bits[index >>> 6] |= (long) ((pixel >>> shift) & 1) << index;
+            }
+        }
+        return bits;
+    }
+
+    @Benchmark
+    public long[] scalarPacker() {
+        Arrays.fill(bits, 0);
+        BitPlane.packScalar(samples, 0, 0, samples.length, bits);
+        return bits;
+    }
+
+    @Benchmark
+    public long[] vectorPacker() {
+        Arrays.fill(bits, 0);
+        vectorPacker.pack(samples, 0, samples.length, bits);
+        return bits;
+    }
+}
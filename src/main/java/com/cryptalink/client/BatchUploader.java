@@ -0,0 +1,357 @@
+package com.cryptalink.client;
+
+import com.cryptalink.server.ImageFormat;
+import com.cryptalink.server.LSBSteganography;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 无交互的批量上传：按目录、通配符或文件列表收集文件，由 {@link TransferManager} 并行上传，
+ * 结束后输出 JSON 格式的汇总（吞吐量、失败的文件和每个文件的耗时），供脚本解析。
+ * 指定 --embed 时先在每个 BMP/PNG 图像中写入隐藏信息（直接修改原图像），各文件的种子值记录在汇总中。
+ * 指定 --delta 时服务器上已有同名文件的大文件只上传差异，汇总中的 wireBytes 是实际的网络字节数。
+ *
+ * <p>用法: Client [--host 地址] [--port 端口] [--concurrency N] [--retries N] [--embed 文本] [--delta] [--summary 文件] 路径或通配符...
+ * <p>未指定 --summary 时汇总作为最后一行输出到标准输出。退出码: 0 全部成功，1 有文件上传失败，2 参数错误
+ */
+public class BatchUploader {
+    private static final Logger logger = LoggerFactory.getLogger(BatchUploader.class);
+    private static final long REPORT_INTERVAL_SECONDS = 5;
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private final String host;
+    private final int port;
+    private final int concurrency;
+    private final int retries;
+    private final String secret;
+    private boolean deltaSync;
+
+    /**
+     * 批量上传的结果
+     * @param unfinished 最终没有上传成功（失败或被取消）的文件数
+     * @param summary JSON 格式的汇总
+     */
+    public record Result(int unfinished, String summary) {
+    }
+
+    /**
+     * @param retries 每个文件失败后最多重试的次数
+     * @param secret 要写入图像的隐藏信息，null 表示直接上传
+     */
+    public BatchUploader(String host, int port, int concurrency, int retries, String secret) {
+        this.host = host;
+        this.port = port;
+        this.concurrency = concurrency;
+        this.retries = retries;
+        this.secret = secret;
+    }
+
+    /**
+     * 只上传与服务器上同名文件的差异，见 {@link TransferManager#setDeltaSync}
+     */
+    public void setDeltaSync(boolean enabled) {
+        this.deltaSync = enabled;
+    }
+
+    /**
+     * 展开输入：目录包括其中所有子目录的文件，含 * ? [ { 的参数按通配符匹配，其余按文件处理。
+     * 结果按输入顺序排列并去重，找不到的输入记录警告后跳过
+     */
+    public static List<Path> collectFiles(List<String> inputs) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String input : inputs) {
+            int before = files.size();
+            if (hasGlob(input)) {
+                files.addAll(expandGlob(input));
+            } else {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> paths = Files.walk(path)) {
+                        paths.filter(Files::isRegularFile).sorted().forEach(files::add);
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    files.add(path);
+                }
+            }
+            if (files.size() == before) {
+                logger.warn("没有找到匹配的文件: {}", input);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean hasGlob(String text) {
+        return text.indexOf('*') >= 0 || text.indexOf('?') >= 0 || text.indexOf('[') >= 0 || text.indexOf('{') >= 0;
+    }
+
+    /**
+     * 从第一个含通配符的路径段之前的目录开始遍历，只遍历通配符需要的深度（含 ** 时不限深度）
+     */
+    private static List<Path> expandGlob(String pattern) throws IOException {
+        String normalized = pattern.replace('\\', '/');
+        String[] segments = normalized.split("/");
+        int firstGlob = 0;
+        while (firstGlob < segments.length && !hasGlob(segments[firstGlob])) {
+            firstGlob++;
+        }
+        String base = String.join("/", Arrays.copyOfRange(segments, 0, firstGlob));
+        Path baseDir = Paths.get(base.isEmpty() ? (normalized.startsWith("/") ? "/" : ".") : base);
+        if (!Files.isDirectory(baseDir)) {
+            return List.of();
+        }
+        String relative = String.join("/", Arrays.copyOfRange(segments, firstGlob, segments.length));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+        int depth = relative.contains("**") ? Integer.MAX_VALUE : segments.length - firstGlob;
+        try (Stream<Path> paths = Files.walk(baseDir, depth)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(file -> matcher.matches(baseDir.relativize(file)))
+                .sorted()
+                .toList();
+        }
+    }
+
+    /**
+     * 上传所有文件并等待结束，失败的文件按设置的次数重试
+     */
+    public Result upload(List<Path> files) throws InterruptedException {
+        BlockingQueue<Transfer> finished = new LinkedBlockingQueue<>();
+        TransferManager manager = new TransferManager(host, port, concurrency, finished::add);
+        manager.setDeltaSync(deltaSync);
+        List<Transfer> transfers = new ArrayList<>(files.size());
+        Map<Transfer, Integer> attempts = new HashMap<>();
+        long startTime = System.nanoTime();
+        try {
+            for (Path file : files) {
+                boolean embed = secret != null && isImage(file);
+                long seed = embed ? LSBSteganography.generateRandomSeed() : 0;
+                Transfer transfer = manager.submit(file, embed ? secret : null, seed);
+                transfers.add(transfer);
+                attempts.put(transfer, 1);
+            }
+
+            int remaining = transfers.size();
+            int done = 0;
+            while (remaining > 0) {
+                Transfer transfer = finished.poll(REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                if (transfer == null) {
+                    report(transfers, done, startTime);
+                    continue;
+                }
+                int attempt = attempts.get(transfer);
+                String reason = transfer.getMessage();
+                if (transfer.getState() == Transfer.State.FAILED && attempt <= retries && manager.retry(transfer)) {
+                    attempts.put(transfer, attempt + 1);
+                    logger.warn("上传失败，第 {} 次重试: {}（{}）", attempt, transfer.getFile(), reason);
+                    continue;
+                }
+                remaining--;
+                done++;
+            }
+        } finally {
+            manager.shutdown();
+        }
+        long elapsedNanos = System.nanoTime() - startTime;
+        report(transfers, transfers.size(), startTime);
+        int unfinished = 0;
+        for (Transfer transfer : transfers) {
+            if (transfer.getState() != Transfer.State.COMPLETED) {
+                unfinished++;
+            }
+        }
+        return new Result(unfinished, summarize(transfers, attempts, elapsedNanos));
+    }
+
+    private static boolean isImage(Path file) {
+        try {
+            return ImageFormat.detect(file) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void report(List<Transfer> transfers, int done, long startTime) {
+        long bytes = 0;
+        for (Transfer transfer : transfers) {
+            bytes += transfer.getBytesSent();
+        }
+        double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 1e-3);
+        double megabytes = bytes / (1024.0 * 1024.0);
+        logger.info("已完成 {}/{} 个文件，已发送 {} MB，用时 {} 秒，速度 {} MB/秒",
+            done, transfers.size(), String.format("%.1f", megabytes), String.format("%.1f", seconds),
+            String.format("%.2f", megabytes / seconds));
+    }
+
+    private static String summarize(List<Transfer> transfers, Map<Transfer, Integer> attempts, long elapsedNanos) {
+        int completed = 0;
+        int failed = 0;
+        int cancelled = 0;
+        long bytes = 0;
+        long wireBytes = 0;
+        long[] latencies = new long[transfers.size()];
+        int latencyCount = 0;
+        StringBuilder items = new StringBuilder();
+        for (Transfer transfer : transfers) {
+            wireBytes += transfer.getWireBytes();
+            switch (transfer.getState()) {
+                case COMPLETED -> {
+                    completed++;
+                    bytes += transfer.getSize();
+                    latencies[latencyCount++] = transfer.getActiveMillis();
+                }
+                case CANCELLED -> cancelled++;
+                default -> failed++;
+            }
+            if (items.length() > 0) {
+                items.append(',');
+            }
+            items.append("{\"file\":").append(jsonString(transfer.getFile().toString()))
+                .append(",\"size\":").append(transfer.getSize())
+                .append(",\"wireBytes\":").append(transfer.getWireBytes())
+                .append(",\"state\":").append(jsonString(transfer.getState().name()))
+                .append(",\"latencyMs\":").append(transfer.getActiveMillis())
+                .append(",\"attempts\":").append(attempts.get(transfer));
+            if (transfer.getSeed() != 0) {
+                items.append(",\"seed\":").append(transfer.getSeed());
+            }
+            if (transfer.getState() != Transfer.State.COMPLETED && transfer.getMessage() != null) {
+                items.append(",\"error\":").append(jsonString(transfer.getMessage()));
+            }
+            items.append('}');
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        double seconds = Math.max(elapsedNanos / 1e9, 1e-3);
+
+        return "{\"files\":" + transfers.size()
+            + ",\"completed\":" + completed
+            + ",\"failed\":" + failed
+            + ",\"cancelled\":" + cancelled
+            + ",\"bytes\":" + bytes
+            + ",\"wireBytes\":" + wireBytes
+            + ",\"elapsedMs\":" + elapsedNanos / 1_000_000
+            + ",\"throughputMBps\":" + String.format(Locale.ROOT, "%.3f", bytes / (1024.0 * 1024.0) / seconds)
+            + ",\"filesPerSecond\":" + String.format(Locale.ROOT, "%.3f", completed / seconds)
+            + ",\"latencyMs\":{\"min\":" + percentile(sorted, 0.0)
+            + ",\"p50\":" + percentile(sorted, 0.5)
+            + ",\"p90\":" + percentile(sorted, 0.9)
+            + ",\"p99\":" + percentile(sorted, 0.99)
+            + ",\"max\":" + percentile(sorted, 1.0) + "}"
+            + ",\"transfers\":[" + items + "]}";
+    }
+
+    /** 最近秩法求分位数，没有数据时返回 0 */
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    private static String jsonString(String text) {
+        StringBuilder json = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * 解析命令行参数并执行批量上传
+     * @return 进程退出码
+     */
+    public static int run(String[] args, String defaultHost, int defaultPort) {
+        String host = defaultHost;
+        int port = defaultPort;
+        int concurrency = DEFAULT_CONCURRENCY;
+        int retries = 0;
+        String secret = null;
+        boolean deltaSync = false;
+        Path summaryFile = null;
+        List<String> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--host" -> host = args[++i];
+                    case "--port" -> port = Integer.parseInt(args[++i]);
+                    case "--concurrency" -> concurrency = Integer.parseInt(args[++i]);
+                    case "--retries" -> retries = Integer.parseInt(args[++i]);
+                    case "--embed" -> secret = args[++i];
+                    case "--delta" -> deltaSync = true;
+                    case "--summary" -> summaryFile = Paths.get(args[++i]);
+                    default -> inputs.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            inputs.clear();
+        }
+        if (inputs.isEmpty() || concurrency < 1 || retries < 0) {
+            System.err.println("用法: Client [--host 地址] [--port 端口] [--concurrency N] [--retries N] "
+                + "[--embed 文本] [--delta] [--summary 文件] 路径或通配符...");
+            return 2;
+        }
+        if (concurrency > TransferManager.MAX_PARALLELISM) {
+            logger.warn("并发数 {} 超过上限，按 {} 处理", concurrency, TransferManager.MAX_PARALLELISM);
+        }
+
+        try {
+            List<Path> files = collectFiles(inputs);
+            if (files.isEmpty()) {
+                logger.error("没有要上传的文件");
+                return 2;
+            }
+            logger.info("开始批量上传 {} 个文件到 {}:{}，并发数 {}", files.size(), host, port, concurrency);
+            BatchUploader uploader = new BatchUploader(host, port, concurrency, retries, secret);
+            uploader.setDeltaSync(deltaSync);
+            Result result = uploader.upload(files);
+            if (summaryFile != null) {
+                Files.writeString(summaryFile, result.summary(), StandardCharsets.UTF_8);
+                logger.info("汇总已写入: {}", summaryFile);
+            } else {
+                System.out.println(result.summary());
+            }
+            return result.unfinished() == 0 ? 0 : 1;
+        } catch (IOException e) {
+            logger.error("批量上传失败", e);
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("批量上传被中断");
+            return 1;
+        }
+    }
+}
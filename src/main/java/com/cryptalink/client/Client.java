@@ -1,18 +1,15 @@
 package com.cryptalink.client;
 
 import com.cryptalink.common.VersionManager;
-import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.cryptalink.server.ImageFormat;
 import com.cryptalink.server.LSBSteganography;
 
 import java.io.*;
-import java.net.Socket;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.Scanner;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -23,12 +20,15 @@ public class Client {
     private static final int SERVER_PORT = 8888;
     private static final String CLIENT_JAR_NAME = "cryptalink-client-jar-with-dependencies.jar";
     
+    private static final int UPLOAD_PARALLELISM = 2;
+
     private final ExecutorService executorService;
     private final VersionManager versionManager;
-    private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
-    private boolean running;
+    private ConnectionPool connectionPool;
+    // 接收服务器通知的控制连接，断开后重连替换
+    private volatile ConnectionPool.Connection connection;
+    private TransferManager transferManager;
+    private volatile boolean running;
 
     public Client() {
         this.executorService = Executors.newCachedThreadPool();
@@ -55,48 +55,48 @@ public class Client {
     }
 
     private void connect() throws IOException {
-        socket = new Socket(SERVER_HOST, SERVER_PORT);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(socket.getOutputStream(), true);
+        // 连接池完成版本握手后才返回连接，断开后也通过它重连
+        connectionPool = new ConnectionPool(SERVER_HOST, SERVER_PORT, UPLOAD_PARALLELISM + 1);
+        connection = connectionPool.acquire();
+        transferManager = new TransferManager(connectionPool, UPLOAD_PARALLELISM, this::transferFinished);
+        // 重新上传修改过的大文件时只发送差异
+        transferManager.setDeltaSync(true);
         logger.info("已连接到服务器");
     }
 
     private void checkVersion() throws IOException {
-        out.println("VERSION_CHECK");
-        String response = in.readLine();
-        if (response != null && response.startsWith("VERSION:")) {
-            String serverVersion = response.substring(8);
-            if (versionManager.isNewerVersion(serverVersion)) {
-                logger.info("发现新版本 {}，当前版本 {}，准备更新...", serverVersion, versionManager.getVersion());
-                // 获取新下载链接
-                out.println("GET_UPDATE_URL");
-                String updateUrl = in.readLine();
-                if (updateUrl != null && updateUrl.startsWith("UPDATE_URL:")) {
-                    String url = updateUrl.substring(11);
-                    downloadAndUpdate(url);
-                }
-            } else {
-                logger.info("当前版本 {} 已是最新", versionManager.getVersion());
+        String serverVersion = connectionPool.getServerVersion();
+        if (serverVersion != null && versionManager.isNewerVersion(serverVersion)) {
+            logger.info("发现新版本 {}，当前版本 {}，准备更新...", serverVersion, versionManager.getVersion());
+            // 获取新下载链接
+            connection.send("GET_UPDATE_URL");
+            String updateUrl = connection.in().readLine();
+            if (updateUrl != null && updateUrl.startsWith("UPDATE_URL:")) {
+                String url = updateUrl.substring(11);
+                downloadAndUpdate(url);
             }
+        } else {
+            logger.info("当前版本 {} 已是最新", versionManager.getVersion());
         }
     }
 
     private void downloadAndUpdate(String updateUrl) {
         try {
             logger.info("开始下载新版本...");
-            // 下载新版本
-            URL url = new URL(updateUrl);
-            Path tempFile = Files.createTempFile("new-client-", ".jar");
-            try (InputStream in = url.openStream()) {
-                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            // 有补丁时只下载补丁，下载结果经过校验并保存在本地缓存中
+            Path currentJar = Updater.currentJar();
+            Path newJar = new Updater().fetch(updateUrl, currentJar);
+            if (newJar == null) {
+                logger.error("下载新版本失败，继续使用当前版本");
+                return;
+            }
+            if (currentJar == null) {
+                logger.error("当前不是从 jar 运行，无法替换，新版本已下载到: {}", newJar);
+                return;
             }
-
-            // 获取当前JAR文件路径
-            String currentJarPath = new File(Client.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
-            Path currentJar = Paths.get(currentJarPath);
 
             // 创建更新脚本
-            Path updateScript = createUpdateScript(currentJar, tempFile);
+            Path updateScript = createUpdateScript(currentJar, newJar);
 
             // 执行更新脚本
             logger.info("准备重启新版本...");
@@ -128,8 +128,10 @@ public class Client {
         while (running) {
             System.out.println("\n请选择操作：");
             System.out.println("1. 上传文件");
-            System.out.println("2. 检查BMP隐写信息");
-            System.out.println("3. 退出");
+            System.out.println("2. 检查图像隐写信息（BMP/PNG）");
+            System.out.println("3. 将文件嵌入图像（BMP/PNG）");
+            System.out.println("4. 从图像提取文件");
+            System.out.println("5. 退出");
             
             String choice = scanner.nextLine();
             switch (choice) {
@@ -139,11 +141,25 @@ public class Client {
                     uploadFile(filePath);
                     break;
                 case "2":
-                    System.out.println("请输入BMP文件路径：");
-                    String bmpPath = scanner.nextLine();
-                    checkSteganography(bmpPath);
+                    System.out.println("请输入图像文件路径：");
+                    String imagePath = scanner.nextLine();
+                    checkSteganography(imagePath);
                     break;
                 case "3":
+                    System.out.println("请输入图像文件路径：");
+                    String coverPath = scanner.nextLine();
+                    System.out.println("请输入要嵌入的文件路径：");
+                    String payloadPath = scanner.nextLine();
+                    embedFile(coverPath, payloadPath);
+                    break;
+                case "4":
+                    System.out.println("请输入图像文件路径：");
+                    String stegoPath = scanner.nextLine();
+                    System.out.println("请输入提取文件的保存路径：");
+                    String outputPath = scanner.nextLine();
+                    extractFile(stegoPath, outputPath);
+                    break;
+                case "5":
                     running = false;
                     break;
                 default:
@@ -160,10 +176,10 @@ public class Client {
                 return;
             }
 
-            // 如果是 BMP，询问是否写入隐藏信息
-            if (filePath.toLowerCase().endsWith(".bmp")) {
+            // 如果是 BMP 或 PNG 图像（按文件内容识别），询问是否写入隐藏信息
+            if (ImageFormat.detect(path) != null) {
                 Scanner scanner = new Scanner(System.in);
-                System.out.println("是否在 BMP 中嵌入隐藏信息？(y/n)");
+                System.out.println("是否在图像中嵌入隐藏信息？(y/n)");
                 String answer = scanner.nextLine().trim().toLowerCase();
                 if ("y".equals(answer) || "yes".equals(answer)) {
                     System.out.println("请输入要隐藏的文本：");
@@ -173,7 +189,7 @@ public class Client {
                         long seed = LSBSteganography.generateRandomSeed();
                         LSBSteganography.hideMessage(filePath, secret, seed);
                         System.out.println("请保存这个种子值以便之后提取信息：" + seed);
-                        logger.info("已在 BMP 中写入隐藏信息，种子值：{}", seed);
+                        logger.info("已在图像中写入隐藏信息，种子值：{}", seed);
                     } catch (Exception ex) {
                         logger.error("写入隐藏信息失败: ", ex);
                         System.out.println("写入隐藏信息失败，继续上传原图。");
@@ -181,29 +197,24 @@ public class Client {
                 }
             }
 
-            byte[] fileContent = Files.readAllBytes(path);
-            String encodedContent = Base64.encodeBase64String(fileContent);
-            
-            out.println("UPLOAD:" + path.getFileName());
-            out.println(encodedContent);
-            out.println("END_UPLOAD");
-            
-            logger.info("文件上传完成，等待服务器响应");
+            // 在后台上传，连接断开时自动重连并重新上传
+            transferManager.submit(path, null, 0);
+            logger.info("文件已加入上传队列: {}", path.getFileName());
         } catch (IOException e) {
             logger.error("文件上传失败: ", e);
         }
     }
 
-    private void checkSteganography(String bmpPath) {
+    private void checkSteganography(String imagePath) {
         try {
-            Path path = Paths.get(bmpPath);
+            Path path = Paths.get(imagePath);
             if (!Files.exists(path)) {
-                logger.error("文件不存在: {}", bmpPath);
+                logger.error("文件不存在: {}", imagePath);
                 return;
             }
 
-            if (!bmpPath.toLowerCase().endsWith(".bmp")) {
-                logger.error("不是BMP文件");
+            if (ImageFormat.detect(path) == null) {
+                logger.error("不是BMP或PNG图像");
                 return;
             }
 
@@ -212,7 +223,7 @@ public class Client {
             Scanner seedScanner = new Scanner(System.in);
             long seed = seedScanner.nextLong();
             
-            String message = LSBSteganography.extractMessage(bmpPath, seed);
+            String message = LSBSteganography.extractMessage(imagePath, seed);
             if (message != null) {
                 System.out.println("发现隐藏信息：" + message);
                 logger.info("成功提取隐藏信息");
@@ -225,35 +236,121 @@ public class Client {
         }
     }
 
-    private void handleServerResponses() {
+    private void embedFile(String imagePath, String payloadPath) {
         try {
-            String response;
-            while (running && (response = in.readLine()) != null) {
-                if (response.equals("UPLOAD_SUCCESS:STEGANOGRAPHY")) {
-                    logger.info("文件上传成功，服务器已进行隐写处理");
+            Path image = Paths.get(imagePath);
+            Path payload = Paths.get(payloadPath);
+            if (!Files.exists(image) || !Files.exists(payload)) {
+                logger.error("文件不存在: {}", Files.exists(image) ? payloadPath : imagePath);
+                return;
+            }
+            if (ImageFormat.detect(image) == null) {
+                logger.error("不是BMP或PNG图像");
+                return;
+            }
+
+            System.out.println("每个颜色通道使用的位数（1-" + LSBSteganography.MAX_BITS_PER_CHANNEL
+                + "，位数越多容量越大，默认1）：");
+            String bitsInput = new Scanner(System.in).nextLine().trim();
+            int bitsPerChannel = bitsInput.isEmpty() ? 1 : Integer.parseInt(bitsInput);
+
+            long seed = LSBSteganography.generateRandomSeed();
+            if (LSBSteganography.hidePayload(imagePath, payload, seed, bitsPerChannel)) {
+                System.out.println("文件已嵌入图像，请保存这个种子值以便之后提取：" + seed);
+                logger.info("已在图像中嵌入文件 {}，大小 {} 字节", payload.getFileName(), Files.size(payload));
+            } else {
+                System.out.println("嵌入失败，图像容量可能不足");
+            }
+        } catch (Exception e) {
+            logger.error("嵌入文件失败: ", e);
+        }
+    }
+
+    private void extractFile(String imagePath, String outputPath) {
+        try {
+            if (!Files.exists(Paths.get(imagePath))) {
+                logger.error("文件不存在: {}", imagePath);
+                return;
+            }
+
+            System.out.println("请输入提取信息所需的种子值：");
+            Scanner seedScanner = new Scanner(System.in);
+            long seed = seedScanner.nextLong();
+
+            long length = LSBSteganography.extractPayload(imagePath, seed, Paths.get(outputPath));
+            if (length >= 0) {
+                System.out.println("已提取文件：" + outputPath + "（" + length + " 字节）");
+                logger.info("成功提取嵌入的文件");
+            } else {
+                System.out.println("未发现嵌入的文件或种子值错误");
+            }
+        } catch (Exception e) {
+            logger.error("提取文件失败: ", e);
+        }
+    }
+
+    private void transferFinished(Transfer transfer) {
+        switch (transfer.getState()) {
+            case COMPLETED -> {
+                if ("UPLOAD_SUCCESS:STEGANOGRAPHY".equals(transfer.getMessage())) {
+                    logger.info("文件上传成功，服务器已进行隐写处理: {}", transfer.getFile().getFileName());
                 } else {
-                    logger.info("服务器响应: {}", response);
+                    logger.info("文件上传成功: {}", transfer.getFile().getFileName());
                 }
             }
-        } catch (IOException e) {
-            logger.error("接收服务器响应异常: ", e);
+            case CANCELLED -> logger.info("文件上传已取消: {}", transfer.getFile().getFileName());
+            default -> logger.error("文件上传失败: {}（{}）", transfer.getFile().getFileName(), transfer.getMessage());
+        }
+    }
+
+    /**
+     * 读取控制连接上的服务器通知，连接断开时通过连接池重连，多次重连失败才退出
+     */
+    private void handleServerResponses() {
+        while (running) {
+            ConnectionPool.Connection current = connection;
+            String response;
+            try {
+                response = current.in().readLine();
+            } catch (IOException e) {
+                response = null;
+            }
+            if (!running) {
+                break;
+            }
+            if (response == null) {
+                connectionPool.invalidate(current);
+                logger.warn("与服务器的连接已断开，正在重连...");
+                try {
+                    connection = connectionPool.acquire();
+                    logger.info("已重新连接到服务器");
+                    continue;
+                } catch (IOException e) {
+                    logger.error("重新连接服务器失败: ", e);
+                    break;
+                }
+            }
+            logger.info("服务器响应: {}", response);
         }
     }
 
     private void shutdown() {
         running = false;
         executorService.shutdown();
-        try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-        } catch (IOException e) {
-            logger.error("关闭连接失败: ", e);
+        if (transferManager != null) {
+            transferManager.shutdown();
+        }
+        if (connectionPool != null) {
+            connectionPool.close();
         }
         logger.info("客户端已关闭");
     }
 
     public static void main(String[] args) {
+        // 带参数启动时进入无交互的批量上传模式
+        if (args.length > 0) {
+            System.exit(BatchUploader.run(args, SERVER_HOST, SERVER_PORT));
+        }
         Client client = new Client();
         client.start();
 
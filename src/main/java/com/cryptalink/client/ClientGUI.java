@@ -1,30 +1,40 @@
 package com.cryptalink.client;
 
+import com.cryptalink.common.LogView;
 import com.cryptalink.common.VersionManager;
+import com.cryptalink.server.ImageFormat;
 import com.cryptalink.server.LSBSteganography;
-import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.image.BufferedImage;
 import java.io.*;
-import java.net.Socket;
-import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import javax.imageio.ImageIO;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ClientGUI extends JFrame {
     private static final Logger logger = LoggerFactory.getLogger(ClientGUI.class);
     private static final String SERVER_HOST = "localhost";
     private static final int SERVER_PORT = 8888;
+    private static final int DEFAULT_PARALLELISM = 2;
+    private static final int TRANSFER_REFRESH_INTERVAL_MS = 200;
+    private static final int PREVIEW_SIZE = 450;
+    private static final int THUMBNAIL_CACHE_SIZE = 16;
 
     // 服务器连接相关组件
     private JTextField serverHostField;
@@ -37,20 +47,33 @@ public class ClientGUI extends JFrame {
     // 图像隐写相关组件
     private JTextField messageField;
     private JTextArea stegoOutputArea;
+    private LogView stegoLog;
     private JLabel imageLabel;
     private File selectedImageFile;
     private JTextField seedField;
+    private JButton extractButton;
+    private JButton cancelExtractButton;
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache(THUMBNAIL_CACHE_SIZE);
+    // 当前的预览和提取任务，只在事件分发线程中访问
+    private SwingWorker<BufferedImage, BufferedImage> previewWorker;
+    private SwingWorker<String, Void> extractWorker;
 
     // 文件传输相关组件
     private JTextArea transferLogArea;
+    private LogView transferLog;
     private JProgressBar progressBar;
     private JButton uploadButton;
+    private TransferTableModel transferTableModel;
+    private JTable transferTable;
+    private JSpinner parallelismSpinner;
+    private JCheckBox deltaSyncCheckBox;
+    private TransferManager transferManager;
 
     // 网络连接相关
-    private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
-    private boolean connected;
+    private ConnectionPool connectionPool;
+    // 接收服务器通知的控制连接，断开后由响应线程重连替换
+    private volatile ConnectionPool.Connection controlConnection;
+    private volatile boolean connected;
     private SimpleDateFormat dateFormat;
     private final VersionManager versionManager;
 
@@ -164,9 +187,13 @@ public class ClientGUI extends JFrame {
 
         // 操作按钮
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
-        JButton extractButton = new JButton("提取消息");
+        extractButton = new JButton("提取消息");
         extractButton.addActionListener(e -> extractMessage());
         buttonPanel.add(extractButton);
+        cancelExtractButton = new JButton("取消");
+        cancelExtractButton.setEnabled(false);
+        cancelExtractButton.addActionListener(e -> cancelExtract());
+        buttonPanel.add(cancelExtractButton);
 
         // 输出区域
         JLabel outputLabel = new JLabel("输出:");
@@ -174,6 +201,7 @@ public class ClientGUI extends JFrame {
         stegoOutputArea.setEditable(false);
         stegoOutputArea.setLineWrap(true);
         stegoOutputArea.setWrapStyleWord(true);
+        stegoLog = LogView.attach(stegoOutputArea, "client-stego");
         JScrollPane outputScrollPane = new JScrollPane(stegoOutputArea);
 
         // 添加组件到右侧面板
@@ -207,7 +235,59 @@ public class ClientGUI extends JFrame {
         uploadButton.setEnabled(false);
         uploadButton.addActionListener(e -> uploadFile());
         fileButtonPanel.add(uploadButton);
-        leftPanel.add(fileButtonPanel, BorderLayout.SOUTH);
+        fileButtonPanel.add(new JLabel("并行数:"));
+        parallelismSpinner = new JSpinner(new SpinnerNumberModel(DEFAULT_PARALLELISM, 1, TransferManager.MAX_PARALLELISM, 1));
+        parallelismSpinner.addChangeListener(e -> {
+            if (transferManager != null) {
+                transferManager.setParallelism((Integer) parallelismSpinner.getValue());
+            }
+        });
+        fileButtonPanel.add(parallelismSpinner);
+        // 服务器已有同名文件时只上传变化的部分
+        deltaSyncCheckBox = new JCheckBox("增量上传", true);
+        deltaSyncCheckBox.addActionListener(e -> {
+            if (transferManager != null) {
+                transferManager.setDeltaSync(deltaSyncCheckBox.isSelected());
+            }
+        });
+        fileButtonPanel.add(deltaSyncCheckBox);
+        leftPanel.add(fileButtonPanel, BorderLayout.NORTH);
+
+        // 上传队列
+        transferTableModel = new TransferTableModel();
+        transferTable = new JTable(transferTableModel);
+        transferTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        transferTable.getColumnModel().getColumn(0).setPreferredWidth(160);
+        JScrollPane queueScrollPane = new JScrollPane(transferTable);
+        queueScrollPane.setPreferredSize(new Dimension(420, 0));
+        leftPanel.add(queueScrollPane, BorderLayout.CENTER);
+
+        JPanel queueButtonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JButton pauseButton = new JButton("暂停");
+        pauseButton.addActionListener(e -> forSelectedTransfers(transfer -> transferManager.pause(transfer)));
+        JButton resumeButton = new JButton("继续");
+        resumeButton.addActionListener(e -> forSelectedTransfers(transfer -> transferManager.resume(transfer)));
+        JButton cancelButton = new JButton("取消");
+        cancelButton.addActionListener(e -> forSelectedTransfers(transfer -> transferManager.cancel(transfer)));
+        JButton retryButton = new JButton("重试失败");
+        retryButton.addActionListener(e -> retryFailedTransfers());
+        JButton clearButton = new JButton("清除已完成");
+        clearButton.addActionListener(e -> transferTableModel.removeFinished());
+        queueButtonPanel.add(pauseButton);
+        queueButtonPanel.add(resumeButton);
+        queueButtonPanel.add(cancelButton);
+        queueButtonPanel.add(retryButton);
+        queueButtonPanel.add(clearButton);
+        leftPanel.add(queueButtonPanel, BorderLayout.SOUTH);
+
+        // 文件和文件夹拖放到上传面板即加入队列
+        TransferHandler dropHandler = new FileDropHandler();
+        leftPanel.setTransferHandler(dropHandler);
+        transferTable.setTransferHandler(dropHandler);
+        queueScrollPane.setTransferHandler(dropHandler);
+
+        // 定时刷新队列和总进度，上传线程不直接操作界面
+        new Timer(TRANSFER_REFRESH_INTERVAL_MS, e -> refreshTransfers()).start();
 
         // 创建右侧传输日志面板
         JPanel rightPanel = new JPanel(new BorderLayout(10, 10));
@@ -218,6 +298,7 @@ public class ClientGUI extends JFrame {
         transferLogArea.setEditable(false);
         transferLogArea.setLineWrap(true);
         transferLogArea.setWrapStyleWord(true);
+        transferLog = LogView.attach(transferLogArea, "client-transfer");
         JScrollPane logScrollPane = new JScrollPane(transferLogArea);
         rightPanel.add(logScrollPane, BorderLayout.CENTER);
 
@@ -248,18 +329,18 @@ public class ClientGUI extends JFrame {
         connectionStatusLabel.setText("正在连接...");
 
         // 在后台线程中进行连接操作
+        ConnectionPool pool = new ConnectionPool(host, port, TransferManager.MAX_PARALLELISM);
+        connectionPool = pool;
         new Thread(() -> {
             try {
-                socket = new Socket(host, port);
-                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                out = new PrintWriter(socket.getOutputStream(), true);
+                // 连接池完成版本握手后才返回连接
+                controlConnection = pool.acquire();
                 connected = true;
+                int parallelism = (Integer) parallelismSpinner.getValue();
+                pool.warmUp(parallelism);
 
                 // 启动响应处理线程
-                startResponseHandler();
-
-                // 发送版本检查请求
-                out.println("VERSION_CHECK");
+                startResponseHandler(pool);
 
                 // 更新UI状态
                 SwingUtilities.invokeLater(() -> {
@@ -269,11 +350,16 @@ public class ClientGUI extends JFrame {
                     connectionStatusLabel.setText("已连接");
                     connectionStatusLabel.setForeground(Color.GREEN);
                     uploadButton.setEnabled(true);
+                    transferManager = new TransferManager(pool, parallelism,
+                        transfer -> SwingUtilities.invokeLater(() -> transferFinished(transfer)));
+                    transferManager.setDeltaSync(deltaSyncCheckBox.isSelected());
                     logTransfer("已连接到服务器 " + host + ":" + port);
+                    checkServerVersion(pool.getServerVersion());
                 });
 
             } catch (IOException e) {
                 logger.error("连接服务器失败", e);
+                pool.close();
                 SwingUtilities.invokeLater(() -> {
                     showError("连接服务器失败: " + e.getMessage());
                     connectButton.setEnabled(true);
@@ -285,18 +371,18 @@ public class ClientGUI extends JFrame {
     }
 
     private void disconnect() {
-        if (socket != null && !socket.isClosed()) {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                logger.error("关闭socket连接失败", e);
-            }
-        }
-
         connected = false;
-        socket = null;
-        out = null;
-        in = null;
+        if (transferManager != null) {
+            // 取消排队和进行中的上传
+            transferManager.shutdown();
+            transferManager = null;
+        }
+        if (connectionPool != null) {
+            // 同时关闭控制连接，响应线程随之退出
+            connectionPool.close();
+            connectionPool = null;
+        }
+        controlConnection = null;
 
         // 更新UI状态
         connectButton.setEnabled(true);
@@ -310,55 +396,99 @@ public class ClientGUI extends JFrame {
         logTransfer("已断开连接");
     }
 
-    private void startResponseHandler() {
+    private void checkServerVersion(String serverVersion) {
+        if (serverVersion != null && versionManager.isNewerVersion(serverVersion)) {
+            int choice = JOptionPane.showConfirmDialog(
+                this,
+                "发现新版本 " + serverVersion + "，是否更新？",
+                "版本更新",
+                JOptionPane.YES_NO_OPTION
+            );
+
+            if (choice == JOptionPane.YES_OPTION) {
+                // 获取更新链接
+                sendControl("GET_UPDATE_URL");
+            }
+        }
+    }
+
+    private void sendControl(String command) {
+        ConnectionPool.Connection conn = controlConnection;
+        if (conn == null) {
+            showError("未连接到服务器");
+            return;
+        }
+        try {
+            conn.send(command);
+        } catch (IOException e) {
+            // 响应线程会发现连接断开并重连
+            logger.error("发送命令失败: {}", command, e);
+            showError("发送命令失败，请稍后重试");
+        }
+    }
+
+    /**
+     * 读取控制连接上的服务器通知。连接断开时通过连接池重连（带退避和版本握手），多次重连失败才断开
+     */
+    private void startResponseHandler(ConnectionPool pool) {
         Thread responseThread = new Thread(() -> {
-            try {
+            while (connected) {
+                ConnectionPool.Connection conn = controlConnection;
                 String response;
-                while (connected && (response = in.readLine()) != null) {
-                    final String finalResponse = response;
-                    SwingUtilities.invokeLater(() -> {
-                        if (finalResponse.startsWith("VERSION:")) {
-                            String serverVersion = finalResponse.substring(8);
-                            if (versionManager.isNewerVersion(serverVersion)) {
-                                int choice = JOptionPane.showConfirmDialog(
-                                    this,
-                                    "发现新版本 " + serverVersion + "，是否更新？",
-                                    "版本更新",
-                                    JOptionPane.YES_NO_OPTION
-                                );
-                                
-                                if (choice == JOptionPane.YES_OPTION) {
-                                    // 获取更新链接
-                                    out.println("GET_UPDATE_URL");
-                                }
-                            }
-                        } else if (finalResponse.startsWith("UPDATE_URL:")) {
-                            String url = finalResponse.substring(11);
-                            downloadAndUpdate(url);
-                        } else if (finalResponse.startsWith("UPLOAD_SUCCESS")) {
-                            logTransfer("文件上传成功");
-                        } else if (finalResponse.startsWith("UPLOAD_FAILED")) {
-                            showError("上传失败: " + finalResponse.substring("UPLOAD_FAILED:".length()));
-                        }
-                    });
+                try {
+                    response = conn.in().readLine();
+                } catch (IOException e) {
+                    response = null;
                 }
-            } catch (IOException e) {
-                if (connected) {
-                    logger.error("读取服务器响应时发生错误", e);
+                if (!connected) {
+                    break;
+                }
+                if (response == null) {
+                    pool.invalidate(conn);
                     SwingUtilities.invokeLater(() -> {
-                        showError("与服务器的连接已断开: " + e.getMessage());
-                        disconnect();
+                        connectionStatusLabel.setText("正在重连...");
+                        connectionStatusLabel.setForeground(Color.ORANGE);
                     });
+                    try {
+                        controlConnection = pool.acquire();
+                        SwingUtilities.invokeLater(() -> {
+                            connectionStatusLabel.setText("已连接");
+                            connectionStatusLabel.setForeground(Color.GREEN);
+                            logTransfer("已重新连接到服务器");
+                        });
+                        continue;
+                    } catch (IOException e) {
+                        if (connected) {
+                            logger.error("重新连接服务器失败", e);
+                            SwingUtilities.invokeLater(() -> {
+                                showError("与服务器的连接已断开: " + e.getMessage());
+                                disconnect();
+                            });
+                        }
+                        break;
+                    }
                 }
+
+                final String finalResponse = response;
+                SwingUtilities.invokeLater(() -> {
+                    if (finalResponse.startsWith("UPDATE_URL:")) {
+                        String url = finalResponse.substring(11);
+                        downloadAndUpdate(url);
+                    } else if (finalResponse.startsWith("UPLOAD_SUCCESS")) {
+                        logTransfer("文件上传成功");
+                    } else if (finalResponse.startsWith("UPLOAD_FAILED")) {
+                        showError("上传失败: " + finalResponse.substring("UPLOAD_FAILED:".length()));
+                    }
+                });
             }
-        });
+        }, "control-connection");
         responseThread.setDaemon(true);
         responseThread.start();
     }
 
     private void selectImage() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileFilter(new FileNameExtensionFilter("BMP Images", "bmp"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("BMP/PNG Images", "bmp", "png"));
         
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             selectedImageFile = fileChooser.getSelectedFile();
@@ -372,74 +502,168 @@ public class ClientGUI extends JFrame {
     }
 
     private void uploadFile() {
-        if (!connected || socket == null) {
+        if (!connected || transferManager == null) {
             showError("未连接到服务器");
             return;
         }
 
         JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setMultiSelectionEnabled(true);
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            try {
-                // 如果是BMP文件，询问是否写入隐藏信息
-                if (file.getName().toLowerCase().endsWith(".bmp")) {
-                    int choice = JOptionPane.showConfirmDialog(
-                        this,
-                        "是否在BMP中嵌入隐藏信息？",
-                        "隐写选项",
-                        JOptionPane.YES_NO_OPTION
-                    );
-                    
-                    if (choice == JOptionPane.YES_OPTION) {
-                        String secret = JOptionPane.showInputDialog(this, "请输入要隐藏的文本：");
-                        if (secret != null && !secret.trim().isEmpty()) {
-                            try {
-                                // 生成随机种子
-                                long seed = LSBSteganography.generateRandomSeed();
-                                LSBSteganography.hideMessage(file.getAbsolutePath(), secret, seed);
-                                logTransfer("已在BMP中写入隐藏信息，种子值为: " + seed + "（请务必保存此种子值，读取时需要）");
-                                
-                                // 读取文件内容并进行Base64编码
-                                byte[] fileContent = Files.readAllBytes(file.toPath());
-                                String encodedContent = Base64.encodeBase64String(fileContent);
-                                
-                                // 发送上传请求
-                                out.println("UPLOAD:" + file.getName());
-                                out.println(encodedContent);
-                                out.println("END_UPLOAD");
-                                out.flush();
-                                
-                                logTransfer("文件 '" + file.getName() + "' 上传完成，等待服务器响应");
-                            } catch (Exception ex) {
-                                logger.error("写入隐藏信息失败", ex);
-                                showError("写入隐藏信息失败: " + ex.getMessage());
-                            }
+            File[] selected = fileChooser.getSelectedFiles();
+            if (selected.length == 1 && selected[0].isFile()) {
+                uploadSingleFile(selected[0]);
+            } else {
+                enqueueFiles(Arrays.asList(selected));
+            }
+        }
+    }
+
+    /**
+     * 上传单个文件，图像文件可以选择先写入隐藏信息
+     */
+    private void uploadSingleFile(File file) {
+        String secret = null;
+        long seed = 0;
+        ImageFormat format;
+        try {
+            format = ImageFormat.detect(file.toPath());
+        } catch (IOException e) {
+            logger.error("读取文件失败", e);
+            showError("读取文件失败: " + e.getMessage());
+            return;
+        }
+        // 如果是BMP或PNG图像（按文件内容识别），询问是否写入隐藏信息
+        if (format != null) {
+            int choice = JOptionPane.showConfirmDialog(
+                this,
+                "是否在图像中嵌入隐藏信息？",
+                "隐写选项",
+                JOptionPane.YES_NO_OPTION
+            );
+
+            if (choice == JOptionPane.YES_OPTION) {
+                secret = JOptionPane.showInputDialog(this, "请输入要隐藏的文本：");
+                if (secret == null || secret.trim().isEmpty()) {
+                    return;
+                }
+                // 生成随机种子，写入在上传线程中进行
+                seed = LSBSteganography.generateRandomSeed();
+                logTransfer("将在图像中写入隐藏信息，种子值为: " + seed + "（请务必保存此种子值，读取时需要）");
+            }
+        }
+
+        Transfer transfer = transferManager.submit(file.toPath(), secret, seed);
+        transferTableModel.add(transfer);
+        logTransfer("文件 '" + file.getName() + "' 已加入上传队列");
+    }
+
+    /**
+     * 把多个文件和文件夹（包括子文件夹中的文件）直接加入上传队列，不写入隐藏信息。
+     * 遍历文件夹在后台线程中进行，找到的文件分批加入队列
+     */
+    private void enqueueFiles(List<File> files) {
+        if (!connected || transferManager == null) {
+            showError("未连接到服务器");
+            return;
+        }
+        TransferManager manager = transferManager;
+        new SwingWorker<Integer, Path>() {
+            @Override
+            protected Integer doInBackground() throws IOException {
+                int count = 0;
+                for (File file : files) {
+                    try (Stream<Path> paths = Files.walk(file.toPath())) {
+                        Iterator<Path> iterator = paths.filter(Files::isRegularFile).iterator();
+                        while (iterator.hasNext()) {
+                            publish(iterator.next());
+                            count++;
                         }
-                    } else {
-                        // 直接上传原始文件
-                        uploadOriginalFile(file);
                     }
-                } else {
-                    // 非BMP文件直接上传
-                    uploadOriginalFile(file);
                 }
-            } catch (IOException e) {
-                logger.error("上传文件失败", e);
-                showError("上传文件失败: " + e.getMessage());
+                return count;
+            }
+
+            @Override
+            protected void process(List<Path> chunk) {
+                // 断开连接后不再加入
+                if (manager != transferManager) {
+                    return;
+                }
+                List<Transfer> added = new ArrayList<>(chunk.size());
+                for (Path path : chunk) {
+                    added.add(manager.submit(path, null, 0));
+                }
+                transferTableModel.addAll(added);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    logTransfer("已加入上传队列: " + get() + " 个文件");
+                } catch (Exception e) {
+                    logger.error("读取文件列表失败", e);
+                    showError("读取文件列表失败: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void retryFailedTransfers() {
+        if (transferManager == null) {
+            return;
+        }
+        int count = 0;
+        for (Transfer transfer : transferTableModel.getTransfers()) {
+            if (transferManager.retry(transfer)) {
+                count++;
             }
         }
+        if (count > 0) {
+            logTransfer("重新上传 " + count + " 个失败的文件");
+        }
+        transferTableModel.refresh();
     }
 
-    private void uploadOriginalFile(File file) throws IOException {
-        byte[] fileContent = Files.readAllBytes(file.toPath());
-        String encodedContent = Base64.encodeBase64String(fileContent);
-        
-        out.println("UPLOAD:" + file.getName());
-        out.println(encodedContent);
-        out.println("END_UPLOAD");
-        out.flush();
-        
-        logTransfer("文件 '" + file.getName() + "' 上传完成，等待服务器响应");
+    private void forSelectedTransfers(Consumer<Transfer> action) {
+        if (transferManager == null) {
+            return;
+        }
+        for (int row : transferTable.getSelectedRows()) {
+            action.accept(transferTableModel.getTransfer(transferTable.convertRowIndexToModel(row)));
+        }
+        transferTableModel.refresh();
+    }
+
+    private void refreshTransfers() {
+        transferTableModel.refresh();
+        int percent = transferTableModel.overallPercent();
+        if (percent >= 0) {
+            progressBar.setValue(percent);
+        }
+    }
+
+    private void transferFinished(Transfer transfer) {
+        String name = transfer.getFile().getFileName().toString();
+        switch (transfer.getState()) {
+            case COMPLETED:
+                progressBar.setValue(100);
+                if (transfer.getWireBytes() < transfer.getSize()) {
+                    logTransfer("文件 '" + name + "' 增量上传成功，传输 "
+                        + TransferTableModel.formatBytes(transfer.getWireBytes()));
+                } else {
+                    logTransfer("文件 '" + name + "' 上传成功");
+                }
+                break;
+            case CANCELLED:
+                logTransfer("文件 '" + name + "' 已取消上传");
+                break;
+            default:
+                logTransfer("文件 '" + name + "' 上传失败: " + transfer.getMessage());
+                break;
+        }
+        transferTableModel.refresh();
     }
 
     private void extractMessage() {
@@ -448,33 +672,71 @@ public class ClientGUI extends JFrame {
             return;
         }
 
+        // 获取种子值
+        long seed;
+        String seedText = seedField.getText().trim();
+        if (seedText.isEmpty()) {
+            showError("请输入种子值");
+            return;
+        }
+
         try {
-            // 获取种子值
-            long seed;
-            String seedText = seedField.getText().trim();
-            if (seedText.isEmpty()) {
-                showError("请输入种子值");
-                return;
-            }
-            
-            try {
-                seed = Long.parseLong(seedText);
-            } catch (NumberFormatException e) {
-                showError("种子值必须是数字");
-                return;
+            seed = Long.parseLong(seedText);
+        } catch (NumberFormatException e) {
+            showError("种子值必须是数字");
+            return;
+        }
+
+        // 解码和提取在后台线程中进行，界面保持响应
+        File imageFile = selectedImageFile;
+        SwingWorker<String, Void> worker = new SwingWorker<>() {
+            @Override
+            protected String doInBackground() {
+                return LSBSteganography.extractMessage(imageFile.getAbsolutePath(), seed);
             }
-            
-            // 提取消息
-            String message = LSBSteganography.extractMessage(selectedImageFile.getAbsolutePath(), seed);
-            if (message != null) {
-                stegoOutputArea.setText("提取到的消息: " + message);
-                logStego("成功提取隐藏消息");
-            } else {
-                showError("未找到隐藏消息或种子值错误");
+
+            @Override
+            protected void done() {
+                if (extractWorker != this) {
+                    return;
+                }
+                extractWorker = null;
+                extractButton.setEnabled(true);
+                cancelExtractButton.setEnabled(false);
+                if (isCancelled()) {
+                    logStego("已取消提取");
+                    return;
+                }
+                try {
+                    String message = get();
+                    if (message != null) {
+                        stegoLog.clear();
+                        stegoLog.append("提取到的消息: " + message);
+                        logStego("成功提取隐藏消息");
+                    } else {
+                        showError("未找到隐藏消息或种子值错误");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.error("提取消息失败", e.getCause());
+                    showError("提取消息失败: " + e.getCause().getMessage());
+                }
             }
-        } catch (Exception e) {
-            logger.error("提取消息失败", e);
-            showError("提取消息失败: " + e.getMessage());
+        };
+        extractWorker = worker;
+        extractButton.setEnabled(false);
+        cancelExtractButton.setEnabled(true);
+        logStego("正在提取隐藏消息: " + imageFile.getName());
+        worker.execute();
+    }
+
+    /**
+     * 放弃当前的提取，后台计算结束后结果被丢弃
+     */
+    private void cancelExtract() {
+        if (extractWorker != null) {
+            extractWorker.cancel(false);
         }
     }
 
@@ -482,6 +744,33 @@ public class ClientGUI extends JFrame {
         showError("请使用文件上传功能来添加隐写信息");
     }
 
+    /**
+     * 接收拖放到上传面板的文件和文件夹
+     */
+    private class FileDropHandler extends TransferHandler {
+        @Override
+        public boolean canImport(TransferSupport support) {
+            return support.isDataFlavorSupported(DataFlavor.javaFileListFlavor);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean importData(TransferSupport support) {
+            if (!canImport(support)) {
+                return false;
+            }
+            try {
+                List<File> files = (List<File>) support.getTransferable()
+                    .getTransferData(DataFlavor.javaFileListFlavor);
+                enqueueFiles(files);
+                return true;
+            } catch (UnsupportedFlavorException | IOException e) {
+                logger.error("读取拖放的文件失败", e);
+                return false;
+            }
+        }
+    }
+
     private void showError(String message) {
         JOptionPane.showMessageDialog(this, message, "错误", JOptionPane.ERROR_MESSAGE);
     }
@@ -489,93 +778,151 @@ public class ClientGUI extends JFrame {
     private void logStego(String message) {
         String timestamp = dateFormat.format(new Date());
         String logMessage = String.format("[%s] %s", timestamp, message);
-        stegoOutputArea.append(logMessage + "\n");
-        stegoOutputArea.setCaretPosition(stegoOutputArea.getDocument().getLength());
+        stegoLog.append(logMessage);
         logger.info(message);
     }
 
     private void logTransfer(String message) {
         String timestamp = dateFormat.format(new Date());
         String logMessage = String.format("[%s] %s", timestamp, message);
-        transferLogArea.append(logMessage + "\n");
-        transferLogArea.setCaretPosition(transferLogArea.getDocument().getLength());
+        transferLog.append(logMessage);
         logger.info(message);
     }
 
+    /**
+     * 在后台下载新版本（有补丁时只下载补丁，结果经过校验并缓存），完成后替换当前 jar 并重启
+     */
     private void downloadAndUpdate(String updateUrl) {
-        try {
-            logTransfer("开始下载新版本...");
-            
-            // 下载新版本
-            URL url = new URL(updateUrl);
-            Path tempFile = Files.createTempFile("new-client-", ".jar");
-            try (InputStream in = url.openStream()) {
-                Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        logTransfer("开始下载新版本...");
+        Path currentJar = Updater.currentJar();
+        new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() {
+                return new Updater().fetch(updateUrl, currentJar);
             }
-            
-            // 获取当前JAR文件路径
-            String currentJarPath = new File(ClientGUI.class.getProtectionDomain()
-                .getCodeSource().getLocation().toURI()).getPath();
-            Path currentJar = Paths.get(currentJarPath);
-            
-            // 创建更新脚本
-            Path script = Files.createTempFile("update-", ".bat");
-            try (BufferedWriter writer = Files.newBufferedWriter(script)) {
-                writer.write("@echo off\n");
-                writer.write("timeout /t 2 /nobreak > nul\n");  // 等待2秒确保当前程序完全退出
-                writer.write("copy /Y \"" + tempFile + "\" \"" + currentJar + "\"\n");
-                writer.write("start javaw -jar \"" + currentJar + "\"\n");
-                writer.write("del \"" + script + "\"\n");  // 删除脚本自身
+
+            @Override
+            protected void done() {
+                try {
+                    Path newJar = get();
+                    if (newJar == null) {
+                        showError("下载新版本失败，继续使用当前版本");
+                        return;
+                    }
+                    if (currentJar == null) {
+                        showError("当前不是从 jar 运行，无法替换，新版本已下载到: " + newJar);
+                        return;
+                    }
+                    installUpdate(currentJar, newJar);
+                } catch (InterruptedException | ExecutionException | IOException e) {
+                    logger.error("更新失败", e);
+                    showError("更新失败: " + e.getMessage());
+                }
             }
-            
-            // 执行更新脚本
-            logTransfer("准备重启新版本...");
-            ProcessBuilder pb = new ProcessBuilder("cmd", "/c", script.toString());
-            pb.start();
-            
-            // 关闭当前程序
-            System.exit(0);
-        } catch (Exception e) {
-            logger.error("更新失败", e);
-            showError("更新失败: " + e.getMessage());
+        }.execute();
+    }
+
+    private void installUpdate(Path currentJar, Path newJar) throws IOException {
+        // 创建更新脚本
+        Path script = Files.createTempFile("update-", ".bat");
+        try (BufferedWriter writer = Files.newBufferedWriter(script)) {
+            writer.write("@echo off\n");
+            writer.write("timeout /t 2 /nobreak > nul\n");  // 等待2秒确保当前程序完全退出
+            writer.write("copy /Y \"" + newJar + "\" \"" + currentJar + "\"\n");
+            writer.write("start javaw -jar \"" + currentJar + "\"\n");
+            writer.write("del \"" + script + "\"\n");  // 删除脚本自身
         }
+        
+        // 执行更新脚本
+        logTransfer("准备重启新版本...");
+        ProcessBuilder pb = new ProcessBuilder("cmd", "/c", script.toString());
+        pb.start();
+        
+        // 关闭当前程序
+        System.exit(0);
     }
 
+    /**
+     * 在后台生成预览：先显示抽样解码的粗略图像，再换成由完整图像缩放的清晰缩略图。
+     * 完整图像的解码结果会被缓存，随后提取隐藏信息时不再重新解码
+     */
     private void displayImage(File imageFile) {
-        try {
-            // 读取图片
-            BufferedImage img = ImageIO.read(imageFile);
-            if (img == null) {
-                throw new IOException("无法读取图片文件");
-            }
+        if (previewWorker != null) {
+            // 不中断线程，避免打断文件读取；被取消的任务结束后结果被丢弃
+            previewWorker.cancel(false);
+            previewWorker = null;
+        }
+        BufferedImage cached = thumbnailCache.get(imageFile.toPath());
+        if (cached != null) {
+            showPreview(cached);
+            return;
+        }
+        imageLabel.setIcon(null);
+        imageLabel.setText("正在加载预览...");
 
-            // 计算缩放比例以适应预览区域
-            double scale = Math.min(
-                450.0 / img.getWidth(),
-                450.0 / img.getHeight()
-            );
+        SwingWorker<BufferedImage, BufferedImage> worker = new SwingWorker<>() {
+            @Override
+            protected BufferedImage doInBackground() throws IOException {
+                try {
+                    BufferedImage quick = Thumbnails.readSubsampled(imageFile, PREVIEW_SIZE);
+                    if (quick != null && !isCancelled()) {
+                        publish(Thumbnails.scale(quick, PREVIEW_SIZE));
+                    }
+                } catch (IOException e) {
+                    // 粗略预览失败不影响完整解码
+                    logger.debug("抽样解码失败: {}", imageFile, e);
+                }
+                if (isCancelled()) {
+                    return null;
+                }
 
-            // 如果图片太大，进行缩放
-            int width = (int) (img.getWidth() * scale);
-            int height = (int) (img.getHeight() * scale);
+                BufferedImage img = LSBSteganography.readImage(imageFile.getAbsolutePath());
+                if (img == null) {
+                    throw new IOException("无法读取图片文件");
+                }
+                if (isCancelled()) {
+                    return null;
+                }
+                BufferedImage thumbnail = Thumbnails.scale(img, PREVIEW_SIZE);
+                thumbnailCache.put(imageFile.toPath(), thumbnail);
+                return thumbnail;
+            }
+
+            @Override
+            protected void process(List<BufferedImage> chunks) {
+                if (previewWorker == this && !isCancelled()) {
+                    showPreview(chunks.get(chunks.size() - 1));
+                }
+            }
 
-            // 创建缩略图
-            Image thumbnail = img.getScaledInstance(width, height, Image.SCALE_SMOOTH);
-            ImageIcon icon = new ImageIcon(thumbnail);
+            @Override
+            protected void done() {
+                if (previewWorker != this || isCancelled()) {
+                    return;
+                }
+                previewWorker = null;
+                try {
+                    showPreview(get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logger.error("显示图片预览失败", e.getCause());
+                    imageLabel.setIcon(null);
+                    imageLabel.setText("图片预览失败: " + e.getCause().getMessage());
+                }
+            }
+        };
+        previewWorker = worker;
+        worker.execute();
+    }
 
-            // 更新预览
-            imageLabel.setIcon(icon);
-            imageLabel.setText("");  // 清除可能存在的提示文本
-            
-            // 重新验证并重绘
-            imageLabel.revalidate();
-            imageLabel.repaint();
+    private void showPreview(BufferedImage thumbnail) {
+        imageLabel.setIcon(new ImageIcon(thumbnail));
+        imageLabel.setText("");  // 清除可能存在的提示文本
 
-        } catch (IOException e) {
-            logger.error("显示图片预览失败", e);
-            imageLabel.setIcon(null);
-            imageLabel.setText("图片预览失败: " + e.getMessage());
-        }
+        // 重新验证并重绘
+        imageLabel.revalidate();
+        imageLabel.repaint();
     }
 
     public static void main(String[] args) {
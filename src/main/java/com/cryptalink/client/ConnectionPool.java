@@ -0,0 +1,276 @@
+package com.cryptalink.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 到同一服务器的连接池。空闲连接保留下来供后续请求复用，新连接建立后先完成版本握手再交给调用方；
+ * 连接失败时按带随机抖动的指数退避重试，网络短暂中断只耽误几十到几百毫秒。
+ */
+public class ConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+    private static final int MAX_CONNECT_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MS = 50;
+    private static final long MAX_BACKOFF_MS = 5000;
+    /** 空闲超过此时间的连接不再复用，中间的网络设备可能已经丢弃了它 */
+    private static final long MAX_IDLE_MS = 60000;
+    /** 复用前检查连接时等待的时间 */
+    private static final int PROBE_TIMEOUT_MS = 1;
+
+    private final String host;
+    private final int port;
+    private final int maxIdle;
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+    private volatile String serverVersion;
+
+    /**
+     * 一个已完成版本握手的连接。同一时间只能由一个线程使用
+     */
+    public static final class Connection {
+        private final Socket socket;
+        private final PrintWriter out;
+        private final BufferedReader in;
+        private long idleSince;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new PrintWriter(socket.getOutputStream(), false);
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        }
+
+        /** 写入后需要调用 flush，写入失败只能通过 checkError 发现 */
+        public PrintWriter out() {
+            return out;
+        }
+
+        public BufferedReader in() {
+            return in;
+        }
+
+        /**
+         * 发送一行命令并立即刷新
+         */
+        public void send(String line) throws IOException {
+            out.println(line);
+            out.flush();
+            if (out.checkError()) {
+                throw new IOException("向服务器发送数据失败");
+            }
+        }
+
+        public boolean isOpen() {
+            return !socket.isClosed();
+        }
+
+        /**
+         * 空闲连接在复用前检查对端是否仍然连接。服务器重启或关闭连接后本地 socket 并未关闭，
+         * 此时读取会立即得到连接结束或错误；空闲连接上不应有未读的数据，读到数据同样视为不可用。
+         * 只有等待超时才说明连接仍然正常
+         */
+        private boolean isReusable() {
+            if (socket.isClosed() || System.currentTimeMillis() - idleSince > MAX_IDLE_MS) {
+                return false;
+            }
+            try {
+                socket.setSoTimeout(PROBE_TIMEOUT_MS);
+                try {
+                    in.read();
+                    return false;
+                } catch (SocketTimeoutException e) {
+                    return true;
+                } finally {
+                    socket.setSoTimeout(0);
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.error("关闭连接失败", e);
+            }
+        }
+    }
+
+    /**
+     * @param maxIdle 最多保留的空闲连接数
+     */
+    public ConnectionPool(String host, int port, int maxIdle) {
+        this.host = host;
+        this.port = port;
+        this.maxIdle = maxIdle;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return 最近一次握手时服务器报告的版本，尚未握手时返回 null
+     */
+    public String getServerVersion() {
+        return serverVersion;
+    }
+
+    /**
+     * 取一个空闲连接，没有空闲连接时新建。用完后调用 {@link #release} 归还，出错时调用 {@link #invalidate}
+     * @throws IOException 多次重试后仍无法连接时抛出
+     */
+    public Connection acquire() throws IOException {
+        while (true) {
+            Connection connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                return connect();
+            }
+            if (connection.isReusable()) {
+                return connection;
+            }
+            // 服务器重启等原因断开的空闲连接，丢弃后继续取下一个
+            logger.debug("丢弃已失效的空闲连接");
+            invalidate(connection);
+        }
+    }
+
+    /**
+     * 归还可以继续使用的连接
+     */
+    public void release(Connection connection) {
+        if (!closed && connection.isOpen()) {
+            synchronized (idle) {
+                if (idle.size() < maxIdle) {
+                    connection.idleSince = System.currentTimeMillis();
+                    idle.addFirst(connection);
+                    return;
+                }
+            }
+        }
+        invalidate(connection);
+    }
+
+    /**
+     * 关闭状态未知或已断开的连接，不再放回池中
+     */
+    public void invalidate(Connection connection) {
+        open.remove(connection);
+        connection.close();
+    }
+
+    /**
+     * 在后台预先建立连接，之后的请求不必等待连接和握手
+     */
+    public void warmUp(int count) {
+        Thread thread = new Thread(() -> {
+            for (int i = 0; i < count && !closed; i++) {
+                try {
+                    release(connect());
+                } catch (IOException e) {
+                    logger.warn("预建连接失败: {}", e.getMessage());
+                    return;
+                }
+            }
+        }, "connection-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 关闭所有连接，包括正在使用的连接，阻塞在这些连接上的读写会立即失败
+     */
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            idle.clear();
+        }
+        for (Connection connection : open) {
+            connection.close();
+        }
+        open.clear();
+    }
+
+    /**
+     * 建立连接并完成版本握手，失败时按指数退避重试，每次的等待时间在 0 到退避上限之间随机选取，
+     * 避免多个连接在服务器恢复时同时重连
+     */
+    private Connection connect() throws IOException {
+        IOException lastError = null;
+        for (int attempt = 0; attempt < MAX_CONNECT_ATTEMPTS && !closed; attempt++) {
+            if (attempt > 0) {
+                long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+                long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+                logger.info("{} 毫秒后第 {} 次重连 {}:{}", delay, attempt, host, port);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待重连时被中断");
+                }
+            }
+            Socket socket = new Socket();
+            try {
+                socket.setKeepAlive(true);
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+                Connection connection = new Connection(socket);
+                handshake(connection);
+                open.add(connection);
+                if (closed) {
+                    invalidate(connection);
+                    break;
+                }
+                return connection;
+            } catch (IOException e) {
+                lastError = e;
+                try {
+                    socket.close();
+                } catch (IOException closeError) {
+                    logger.error("关闭连接失败", closeError);
+                }
+            }
+        }
+        if (lastError == null) {
+            throw new IOException("连接池已关闭");
+        }
+        throw new IOException("无法连接服务器 " + host + ":" + port + ": " + lastError.getMessage(), lastError);
+    }
+
+    /**
+     * 每个新连接都重新进行版本握手，服务器重启后也能得到它当前的版本
+     */
+    private void handshake(Connection connection) throws IOException {
+        connection.socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        connection.send("VERSION_CHECK");
+        String response = connection.in().readLine();
+        if (response == null || !response.startsWith("VERSION:")) {
+            throw new IOException("版本握手失败: " + response);
+        }
+        serverVersion = response.substring("VERSION:".length());
+        connection.socket.setSoTimeout(0);
+    }
+}
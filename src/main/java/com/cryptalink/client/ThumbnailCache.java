@@ -0,0 +1,62 @@
+package com.cryptalink.client;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 最近查看过的图像的缩略图，按文件路径、修改时间和大小识别同一份内容，超过容量时淘汰最久未使用的缩略图。
+ * 在最近的几张图像之间切换时不需要重新解码。
+ */
+final class ThumbnailCache {
+    private final Map<Path, Entry> entries;
+
+    private record Entry(long modifiedTime, long size, BufferedImage thumbnail) {
+    }
+
+    ThumbnailCache(int capacity) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return 文件未变化时返回缓存的缩略图，否则返回 null
+     */
+    BufferedImage get(Path file) {
+        Path path = key(file);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry == null || entry.modifiedTime() != attributes.lastModifiedTime().toMillis()
+                    || entry.size() != attributes.size()) {
+                return null;
+            }
+            return entry.thumbnail();
+        }
+    }
+
+    void put(Path file, BufferedImage thumbnail) throws IOException {
+        Path path = key(file);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        synchronized (this) {
+            entries.put(path, new Entry(attributes.lastModifiedTime().toMillis(), attributes.size(), thumbnail));
+        }
+    }
+
+    private static Path key(Path file) {
+        return file.toAbsolutePath().normalize();
+    }
+}
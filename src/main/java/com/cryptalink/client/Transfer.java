@@ -0,0 +1,273 @@
+package com.cryptalink.client;
+
+import java.nio.file.Path;
+
+/**
+ * 一个上传任务的状态和进度。进度字段由上传线程更新，界面线程可以随时读取
+ */
+public final class Transfer {
+    /**
+     * 上传任务状态
+     */
+    public enum State {
+        QUEUED("排队中"),
+        RUNNING("传输中"),
+        PAUSED("已暂停"),
+        COMPLETED("已完成"),
+        FAILED("失败"),
+        CANCELLED("已取消");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final Path file;
+    private volatile String secret;
+    private final long seed;
+    private volatile long size;
+    private volatile long bytesSent;
+    // 实际写到连接上的字节数，包括编码和增量上传的签名交换，跨重试累计
+    private volatile long wireBytes;
+    private volatile State state = State.QUEUED;
+    private volatile String message;
+    // 以下字段由 this 保护
+    private long activeNanos;
+    private long runningSince;
+    private boolean started;
+    private int requeues;
+
+    Transfer(Path file, long size, String secret, long seed) {
+        this.file = file;
+        this.size = size;
+        this.secret = secret;
+        this.seed = seed;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /** 上传前要写入图像的隐藏信息，不需要写入时为 null */
+    String getSecret() {
+        return secret;
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    /** 隐藏信息已写入图像，重试时不再重复写入 */
+    void markEmbedded() {
+        secret = null;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return 为这个任务发送和接收的网络字节数。增量上传时远小于文件大小
+     */
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** 服务器响应或失败原因 */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return 已发送字节占总大小的比例（0~1）
+     */
+    public double getProgress() {
+        long total = size;
+        return total <= 0 ? (state == State.COMPLETED ? 1.0 : 0.0) : Math.min(1.0, (double) bytesSent / total);
+    }
+
+    /**
+     * @return 传输期间（不含排队和暂停）的平均速度，字节/秒
+     */
+    public synchronized double getBytesPerSecond() {
+        long nanos = activeNanos();
+        return nanos <= 0 ? 0.0 : bytesSent * 1e9 / nanos;
+    }
+
+    /**
+     * @return 从开始发送到收到服务器响应的时间（不含排队和暂停），毫秒
+     */
+    public synchronized long getActiveMillis() {
+        return activeNanos() / 1_000_000;
+    }
+
+    private long activeNanos() {
+        return activeNanos + (state == State.RUNNING ? System.nanoTime() - runningSince : 0);
+    }
+
+    /**
+     * 上传线程取到任务时调用
+     * @return 可以开始上传时返回 true；已取消或在排队时被暂停则返回 false，暂停的任务在继续时重新排队
+     */
+    synchronized boolean begin() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        started = true;
+        state = State.RUNNING;
+        runningSince = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * 每发送一块之前调用，暂停期间在此等待
+     * @return 任务被取消时返回 false
+     */
+    synchronized boolean awaitRunning() throws InterruptedException {
+        while (state == State.PAUSED) {
+            wait();
+        }
+        return state == State.RUNNING;
+    }
+
+    /**
+     * 成批上传的小文件代替 {@link #awaitRunning} 调用，暂停的任务不在这里等待，以免占住同批其他文件的响应和连接
+     * @return RUNNING 时继续发送；PAUSED 时已放弃本次上传，继续时重新排队，之后不会再有这个上传线程报告它结束；
+     *         其他状态表示任务已结束
+     */
+    synchronized State deferIfPaused() {
+        if (state == State.PAUSED && started) {
+            started = false;
+            bytesSent = 0;
+        }
+        return state;
+    }
+
+    void setSize(long size) {
+        this.size = size;
+    }
+
+    void addBytesSent(long bytes) {
+        bytesSent += bytes;
+    }
+
+    /** 在同一连接上从头重新发送时调用 */
+    void resetBytesSent() {
+        bytesSent = 0;
+    }
+
+    void addWireBytes(long bytes) {
+        wireBytes += bytes;
+    }
+
+    synchronized void pause() {
+        if (state == State.RUNNING) {
+            activeNanos += System.nanoTime() - runningSince;
+            state = State.PAUSED;
+        } else if (state == State.QUEUED) {
+            state = State.PAUSED;
+        }
+    }
+
+    /**
+     * @return 任务在排队时被暂停、需要重新提交时返回 true
+     */
+    synchronized boolean resume() {
+        if (state != State.PAUSED) {
+            return false;
+        }
+        if (started) {
+            state = State.RUNNING;
+            runningSince = System.nanoTime();
+            notifyAll();
+            return false;
+        }
+        state = State.QUEUED;
+        return true;
+    }
+
+    /**
+     * @return 任务尚未被上传线程取走时返回 true，此时不会再有上传线程报告它结束
+     */
+    synchronized boolean cancel() {
+        if (state.isFinished()) {
+            return false;
+        }
+        finish(State.CANCELLED, "用户取消");
+        return !started;
+    }
+
+    /**
+     * 失败的任务重新排队，进度从头开始
+     * @return 任务处于失败状态、已重新排队时返回 true
+     */
+    synchronized boolean retry() {
+        if (state != State.FAILED) {
+            return false;
+        }
+        state = State.QUEUED;
+        message = null;
+        started = false;
+        bytesSent = 0;
+        activeNanos = 0;
+        return true;
+    }
+
+    /**
+     * 连接在传输中断开时调用，任务回到排队状态，进度从头开始；在传输中被暂停的任务保持暂停，继续时重新排队
+     * @return 已重新排队时返回 true；任务已结束或重新排队次数超过上限时返回 false
+     */
+    synchronized boolean requeue(int maxRequeues) {
+        if ((state != State.RUNNING && state != State.PAUSED) || !started || requeues >= maxRequeues) {
+            return false;
+        }
+        requeues++;
+        if (state == State.RUNNING) {
+            activeNanos += System.nanoTime() - runningSince;
+            state = State.QUEUED;
+        }
+        started = false;
+        bytesSent = 0;
+        return true;
+    }
+
+    synchronized void complete(String response) {
+        finish(State.COMPLETED, response);
+    }
+
+    /**
+     * 上传线程报告失败，已经结束（取消或完成）的任务保持原状态
+     */
+    synchronized void fail(String reason) {
+        if (!state.isFinished()) {
+            finish(State.FAILED, reason);
+        }
+    }
+
+    private void finish(State finalState, String reason) {
+        if (state == State.RUNNING) {
+            activeNanos += System.nanoTime() - runningSince;
+        }
+        state = finalState;
+        message = reason;
+        notifyAll();
+    }
+}
@@ -0,0 +1,576 @@
+package com.cryptalink.client;
+
+import com.cryptalink.common.DeltaSync;
+import com.cryptalink.server.LSBSteganography;
+import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 后台上传管理：任务排队后由若干上传线程并行执行，连接从 {@link ConnectionPool} 中取得，与界面的控制连接互不干扰。
+ * 文件按块读取、编码和发送，内存占用与文件大小无关，每发送一块更新一次进度；
+ * 块之间检查暂停和取消，取消时发送 ABORT_UPLOAD 通知服务器丢弃已接收的部分。
+ * 连续排队的小文件合并为一批，在同一连接上依次发送后再按顺序读取各自的响应，每批只等待一次服务器往返。
+ * 连接在传输中断开时，尚未收到响应的任务重新排队，由连接池重连后从头上传。
+ * 开启增量上传后，大文件先取得服务器上同名文件的分块签名，只发送变化的数据和对已有块的引用（见 {@link DeltaSync}）。
+ */
+public class TransferManager {
+    private static final Logger logger = LoggerFactory.getLogger(TransferManager.class);
+    /** 每块的原始字节数，是 3 的整数倍，各块分别编码后拼接仍是合法的 Base64 */
+    private static final int CHUNK_BYTES = 48 * 1024;
+    /** 不超过此大小的文件可以合并发送 */
+    private static final long SMALL_FILE_BYTES = 64 * 1024;
+    private static final int BATCH_MAX_FILES = 32;
+    private static final long BATCH_MAX_BYTES = 1024 * 1024;
+    /** 每个任务因连接断开而重新排队的次数上限 */
+    private static final int MAX_REQUEUES = 3;
+    public static final int MAX_PARALLELISM = 8;
+
+    private final ConnectionPool pool;
+    private final boolean ownsPool;
+    private final Consumer<Transfer> onFinished;
+    private final ThreadPoolExecutor workers;
+    // 等待上传的任务，每入队一个任务向线程池提交一次 runNext，一次 runNext 可能取走多个任务
+    private final Deque<Transfer> pending = new ArrayDeque<>();
+    private final Set<Transfer> unfinished = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private volatile boolean deltaSync;
+
+    /** 已发送、等待服务器响应的任务。deferred 表示任务在成批上传中途被暂停，已放弃本次上传 */
+    private record Sent(Transfer transfer, boolean aborted, boolean delta, boolean deferred) {
+    }
+
+    /** 增量上传过程中任务被取消 */
+    private static final class UploadAbortedException extends IOException {
+    }
+
+    /**
+     * 使用自己的连接池，关闭时一并关闭
+     * @param parallelism 同时进行的上传数
+     * @param onFinished 任务结束（完成、失败或取消）时在上传线程中调用
+     */
+    public TransferManager(String host, int port, int parallelism, Consumer<Transfer> onFinished) {
+        this(new ConnectionPool(host, port, MAX_PARALLELISM), true, parallelism, onFinished);
+    }
+
+    /**
+     * 使用共享的连接池，关闭时不关闭连接池
+     */
+    public TransferManager(ConnectionPool pool, int parallelism, Consumer<Transfer> onFinished) {
+        this(pool, false, parallelism, onFinished);
+    }
+
+    private TransferManager(ConnectionPool pool, boolean ownsPool, int parallelism, Consumer<Transfer> onFinished) {
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.onFinished = onFinished;
+        int threads = clampParallelism(parallelism);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "upload-worker-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * 把文件加入上传队列
+     * @param secret 上传前要写入图像的隐藏信息，null 表示直接上传
+     * @param seed 写入隐藏信息使用的种子
+     */
+    public Transfer submit(Path file, String secret, long seed) {
+        long size;
+        try {
+            size = Files.size(file);
+        } catch (IOException e) {
+            size = 0;
+        }
+        Transfer transfer = new Transfer(file, size, secret, seed);
+        unfinished.add(transfer);
+        enqueue(transfer);
+        return transfer;
+    }
+
+    public void pause(Transfer transfer) {
+        transfer.pause();
+    }
+
+    public void resume(Transfer transfer) {
+        if (transfer.resume()) {
+            enqueue(transfer);
+        }
+    }
+
+    public void cancel(Transfer transfer) {
+        if (transfer.cancel()) {
+            finished(transfer);
+        }
+    }
+
+    /**
+     * 重新上传失败的任务，其他任务不受影响
+     * @return 任务处于失败状态、已重新排队时返回 true
+     */
+    public boolean retry(Transfer transfer) {
+        if (!transfer.retry()) {
+            return false;
+        }
+        unfinished.add(transfer);
+        enqueue(transfer);
+        return true;
+    }
+
+    /**
+     * 开启后，大于 {@value #SMALL_FILE_BYTES} 字节的文件在服务器已有同名文件时只上传差异；
+     * 服务器没有同名文件、或重建结果校验失败时在同一连接上改为完整上传
+     */
+    public void setDeltaSync(boolean enabled) {
+        this.deltaSync = enabled;
+    }
+
+    public void setParallelism(int parallelism) {
+        int threads = clampParallelism(parallelism);
+        if (threads > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(threads);
+            workers.setCorePoolSize(threads);
+        } else {
+            workers.setCorePoolSize(threads);
+            workers.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * 取消所有未完成的任务并关闭连接
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+        for (Transfer transfer : unfinished) {
+            cancel(transfer);
+        }
+        synchronized (pending) {
+            pending.clear();
+        }
+        if (ownsPool) {
+            pool.close();
+        }
+    }
+
+    private static int clampParallelism(int parallelism) {
+        return Math.max(1, Math.min(MAX_PARALLELISM, parallelism));
+    }
+
+    private void enqueue(Transfer transfer) {
+        synchronized (pending) {
+            pending.add(transfer);
+        }
+        try {
+            workers.execute(this::runNext);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭
+            cancel(transfer);
+        }
+    }
+
+    private void runNext() {
+        List<Transfer> batch = takeBatch();
+        if (batch.isEmpty()) {
+            return;
+        }
+        ConnectionPool.Connection conn = null;
+        try {
+            // 连接池在多次重连失败后才抛出异常，此时服务器不可用，整批失败
+            conn = pool.acquire();
+            upload(conn, batch);
+            pool.release(conn);
+        } catch (InterruptedException | InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            invalidate(conn);
+            failAll(batch, "上传被中断");
+        } catch (IOException e) {
+            invalidate(conn);
+            if (conn == null) {
+                logger.error("上传失败，无法连接服务器", e);
+                failAll(batch, e.getMessage());
+            } else {
+                logger.warn("上传连接断开，{} 个文件重新排队: {}", batch.size(), e.getMessage());
+                requeueAll(batch, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            logger.error("上传文件失败: {}", batch.get(0).getFile(), e);
+            invalidate(conn);
+            failAll(batch, e.getMessage());
+        }
+        for (Transfer transfer : batch) {
+            // 重新排队的任务由之后的上传线程报告结束
+            if (transfer.getState().isFinished()) {
+                finished(transfer);
+            }
+        }
+    }
+
+    private void invalidate(ConnectionPool.Connection conn) {
+        if (conn != null) {
+            pool.invalidate(conn);
+        }
+    }
+
+    /**
+     * 尚未收到响应的任务重新排队，超过次数上限的任务失败
+     */
+    private void requeueAll(List<Transfer> batch, String reason) {
+        for (Transfer transfer : batch) {
+            if (transfer.requeue(MAX_REQUEUES)) {
+                if (transfer.getState() == Transfer.State.QUEUED) {
+                    enqueue(transfer);
+                }
+            } else {
+                transfer.fail(reason);
+            }
+        }
+    }
+
+    /**
+     * 从队首取出一个大文件，或若干个连续的小文件。已取消和在排队时被暂停的任务直接跳过
+     */
+    private List<Transfer> takeBatch() {
+        List<Transfer> batch = new ArrayList<>();
+        long batchBytes = 0;
+        synchronized (pending) {
+            Transfer next;
+            while ((next = pending.peek()) != null) {
+                boolean small = next.getSize() <= SMALL_FILE_BYTES;
+                if (!batch.isEmpty() && (!small || batch.size() >= BATCH_MAX_FILES
+                        || batchBytes + next.getSize() > BATCH_MAX_BYTES)) {
+                    break;
+                }
+                pending.poll();
+                if (!next.begin()) {
+                    continue;
+                }
+                batch.add(next);
+                batchBytes += next.getSize();
+                if (!small) {
+                    break;
+                }
+            }
+        }
+        return batch;
+    }
+
+    private static void failAll(List<Transfer> batch, String reason) {
+        for (Transfer transfer : batch) {
+            transfer.fail(reason);
+        }
+    }
+
+    private void finished(Transfer transfer) {
+        unfinished.remove(transfer);
+        onFinished.accept(transfer);
+    }
+
+    private void upload(ConnectionPool.Connection conn, List<Transfer> batch) throws IOException, InterruptedException {
+        boolean batched = batch.size() > 1;
+        List<Sent> sent = new ArrayList<>(batch.size());
+        for (Iterator<Transfer> it = batch.iterator(); it.hasNext(); ) {
+            Transfer transfer = it.next();
+            Transfer.State state = awaitRunning(transfer, batched);
+            if (state == Transfer.State.PAUSED) {
+                // 交给继续操作重新排队，不再由这一批报告结束或重新排队
+                it.remove();
+                continue;
+            }
+            if (state != Transfer.State.RUNNING) {
+                continue;
+            }
+            Sent result = send(conn, transfer, batched);
+            if (result == null) {
+                continue;
+            }
+            if (result.deferred()) {
+                it.remove();
+            }
+            sent.add(result);
+        }
+
+        // 服务器按接收顺序逐个响应。增量上传失败时改为完整上传，追加的任务排在最后，增量上传的大文件总是单独成批
+        for (int i = 0; i < sent.size(); i++) {
+            Sent result = sent.get(i);
+            Transfer transfer = result.transfer();
+            String response = readResponse(conn, transfer);
+            if (result.aborted()) {
+                if (!"UPLOAD_ABORTED".equals(response)) {
+                    throw new IOException("服务器未确认取消上传: " + response);
+                }
+                logger.info(result.deferred() ? "已暂停，继续时重新上传: {}" : "已取消上传: {}", transfer.getFile());
+            } else if (response.startsWith("UPLOAD_SUCCESS")) {
+                transfer.complete(response);
+            } else if (result.delta()) {
+                logger.warn("增量上传失败，改为完整上传: {} ({})", transfer.getFile(), response);
+                transfer.resetBytesSent();
+                Sent full = sendFull(conn, transfer, false);
+                if (full != null) {
+                    sent.add(full);
+                }
+            } else {
+                transfer.fail(response.startsWith("UPLOAD_FAILED:") ? response.substring("UPLOAD_FAILED:".length()) : response);
+            }
+        }
+    }
+
+    /**
+     * 发送一个文件，不等待响应。写入隐藏信息或打开文件失败时只有这个任务失败，不向服务器发送任何内容
+     * @param batched 是否与其他小文件成批上传
+     * @return 已发送的任务，需要读取一条响应；未发送时返回 null
+     */
+    private Sent send(ConnectionPool.Connection conn, Transfer transfer, boolean batched)
+            throws IOException, InterruptedException {
+        Path file = transfer.getFile();
+        String secret = transfer.getSecret();
+        if (secret != null) {
+            try {
+                LSBSteganography.hideMessage(file.toString(), secret, transfer.getSeed());
+                transfer.markEmbedded();
+            } catch (RuntimeException e) {
+                logger.error("写入隐藏信息失败: {}", file, e);
+                transfer.fail("写入隐藏信息失败: " + e.getMessage());
+                return null;
+            }
+        }
+        try {
+            transfer.setSize(Files.size(file));
+        } catch (IOException e) {
+            logger.error("读取文件失败: {}", file, e);
+            transfer.fail("读取文件失败: " + e.getMessage());
+            return null;
+        }
+
+        if (deltaSync && transfer.getSize() > SMALL_FILE_BYTES) {
+            DeltaSync.Signature signature = requestSignature(conn, transfer);
+            if (signature != null) {
+                return sendDelta(conn, transfer, signature);
+            }
+        }
+        return sendFull(conn, transfer, batched);
+    }
+
+    /**
+     * 每发送一块之前调用。单独上传的任务在暂停期间等待；成批上传的小文件暂停时不等待，放弃本次上传，
+     * 由 {@link #resume} 重新排队
+     * @return RUNNING 时继续发送，PAUSED 表示已放弃本次上传，其他状态表示任务已取消
+     */
+    private static Transfer.State awaitRunning(Transfer transfer, boolean batched) throws InterruptedException {
+        if (batched) {
+            return transfer.deferIfPaused();
+        }
+        return transfer.awaitRunning() ? Transfer.State.RUNNING : Transfer.State.CANCELLED;
+    }
+
+    /**
+     * 按块编码发送完整的文件内容
+     */
+    private Sent sendFull(ConnectionPool.Connection conn, Transfer transfer, boolean batched)
+            throws IOException, InterruptedException {
+        Path file = transfer.getFile();
+        InputStream input;
+        try {
+            input = Files.newInputStream(file);
+        } catch (IOException e) {
+            logger.error("读取文件失败: {}", file, e);
+            transfer.fail("读取文件失败: " + e.getMessage());
+            return null;
+        }
+        try (input) {
+            println(conn, transfer, "UPLOAD:" + file.getFileName());
+            byte[] buffer = new byte[CHUNK_BYTES];
+            int read;
+            while ((read = input.readNBytes(buffer, 0, CHUNK_BYTES)) > 0) {
+                Transfer.State state = awaitRunning(transfer, batched);
+                if (state != Transfer.State.RUNNING) {
+                    return abort(conn, transfer, state == Transfer.State.PAUSED);
+                }
+                byte[] chunk = read == CHUNK_BYTES ? buffer : Arrays.copyOf(buffer, read);
+                println(conn, transfer, Base64.encodeBase64String(chunk));
+                conn.out().flush();
+                checkError(conn);
+                transfer.addBytesSent(read);
+            }
+        }
+        Transfer.State state = awaitRunning(transfer, batched);
+        if (state != Transfer.State.RUNNING) {
+            return abort(conn, transfer, state == Transfer.State.PAUSED);
+        }
+        println(conn, transfer, "END_UPLOAD");
+        conn.out().flush();
+        checkError(conn);
+        return new Sent(transfer, false, false, false);
+    }
+
+    /**
+     * 向服务器索取同名文件的分块签名
+     * @return 服务器没有同名文件或签名无效时返回 null，此时应完整上传
+     */
+    private static DeltaSync.Signature requestSignature(ConnectionPool.Connection conn, Transfer transfer) throws IOException {
+        String name = transfer.getFile().getFileName().toString();
+        println(conn, transfer, "GET_SIGNATURE:" + name);
+        conn.out().flush();
+        checkError(conn);
+        String header = readResponse(conn, transfer);
+        if (!header.startsWith("SIGNATURE:")) {
+            logger.info("服务器上没有 {}，完整上传", name);
+            return null;
+        }
+        StringBuilder encoded = new StringBuilder();
+        String line;
+        while (!(line = readResponse(conn, transfer)).equals("END_SIGNATURE")) {
+            encoded.append(line);
+        }
+        try {
+            return DeltaSync.Signature.fromBytes(Base64.decodeBase64(encoded.toString()));
+        } catch (IOException e) {
+            logger.warn("服务器返回的签名无效，完整上传: {} ({})", name, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 发送新文件与服务器上已有版本的差异，最后附上新文件的长度和 SHA-256 供服务器核对重建结果
+     */
+    private Sent sendDelta(ConnectionPool.Connection conn, Transfer transfer, DeltaSync.Signature signature)
+            throws IOException, InterruptedException {
+        Path file = transfer.getFile();
+        InputStream input;
+        try {
+            input = Files.newInputStream(file);
+        } catch (IOException e) {
+            logger.error("读取文件失败: {}", file, e);
+            transfer.fail("读取文件失败: " + e.getMessage());
+            return null;
+        }
+        MessageDigest digest = DeltaSync.newContentDigest();
+        DeltaWriter writer = new DeltaWriter(conn, transfer, signature);
+        println(conn, transfer, "DELTA_UPLOAD:" + file.getFileName() + ":" + signature.blockSize());
+        try (InputStream in = new DigestInputStream(new BufferedInputStream(input, CHUNK_BYTES), digest)) {
+            DeltaSync.delta(in, signature, writer);
+        } catch (UploadAbortedException e) {
+            return abort(conn, transfer, false);
+        }
+        if (!transfer.awaitRunning()) {
+            return abort(conn, transfer, false);
+        }
+        println(conn, transfer, "END_DELTA:" + writer.length + ":" + HexFormat.of().formatHex(digest.digest()));
+        conn.out().flush();
+        checkError(conn);
+        logger.info("增量上传 {}: 文件 {} 字节，发送 {} 字节", file, writer.length, transfer.getWireBytes());
+        return new Sent(transfer, false, true, false);
+    }
+
+    /**
+     * 把增量指令写到连接上：COPY 引用服务器已有文件中的连续块，DATA 携带 Base64 编码的新数据。
+     * 每条指令之前检查暂停和取消
+     */
+    private static final class DeltaWriter implements DeltaSync.DeltaSink {
+        private final ConnectionPool.Connection conn;
+        private final Transfer transfer;
+        private final DeltaSync.Signature signature;
+        private long length;
+
+        DeltaWriter(ConnectionPool.Connection conn, Transfer transfer, DeltaSync.Signature signature) {
+            this.conn = conn;
+            this.transfer = transfer;
+            this.signature = signature;
+        }
+
+        @Override
+        public void copy(int firstBlock, int blockCount) throws IOException {
+            awaitRunning();
+            println(conn, transfer, "COPY:" + firstBlock + ":" + blockCount);
+            long start = (long) firstBlock * signature.blockSize();
+            long bytes = Math.min(signature.length(), start + (long) blockCount * signature.blockSize()) - start;
+            sent(bytes);
+        }
+
+        @Override
+        public void literal(byte[] data, int offset, int length) throws IOException {
+            awaitRunning();
+            println(conn, transfer, "DATA:" + Base64.encodeBase64String(Arrays.copyOfRange(data, offset, offset + length)));
+            sent(length);
+        }
+
+        private void awaitRunning() throws IOException {
+            try {
+                if (!transfer.awaitRunning()) {
+                    throw new UploadAbortedException();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("上传被中断");
+            }
+        }
+
+        private void sent(long bytes) throws IOException {
+            conn.out().flush();
+            checkError(conn);
+            length += bytes;
+            transfer.addBytesSent(bytes);
+        }
+    }
+
+    /**
+     * 写入一行，不刷新，计入任务的网络字节数
+     */
+    private static void println(ConnectionPool.Connection conn, Transfer transfer, String line) {
+        conn.out().println(line);
+        transfer.addWireBytes(line.length() + 1);
+    }
+
+    private static String readResponse(ConnectionPool.Connection conn, Transfer transfer) throws IOException {
+        String response = conn.in().readLine();
+        if (response == null) {
+            throw new IOException("服务器关闭了连接");
+        }
+        transfer.addWireBytes(response.length() + 1);
+        return response;
+    }
+
+    /**
+     * 通知服务器放弃本次上传，服务器确认后连接可以继续用于后续上传
+     * @param deferred 任务是被暂停而不是被取消
+     */
+    private static Sent abort(ConnectionPool.Connection conn, Transfer transfer, boolean deferred) throws IOException {
+        println(conn, transfer, "ABORT_UPLOAD");
+        conn.out().flush();
+        checkError(conn);
+        return new Sent(transfer, true, false, deferred);
+    }
+
+    private static void checkError(ConnectionPool.Connection conn) throws IOException {
+        // PrintWriter 不抛出异常，写入失败只能通过 checkError 发现
+        if (conn.out().checkError()) {
+            throw new IOException("向服务器发送数据失败");
+        }
+    }
+}
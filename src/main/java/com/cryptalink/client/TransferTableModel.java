@@ -0,0 +1,122 @@
+package com.cryptalink.client;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 上传队列的表格模型。任务状态和进度由上传线程更新，表格由界面定时刷新，不为每个数据块触发一次事件。
+ * 只能在事件分发线程中使用。
+ */
+final class TransferTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"文件", "大小", "状态", "进度", "速度"};
+
+    private final List<Transfer> transfers = new ArrayList<>();
+
+    @Override
+    public int getRowCount() {
+        return transfers.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Transfer transfer = transfers.get(row);
+        switch (column) {
+            case 0:
+                return transfer.getFile().getFileName().toString();
+            case 1:
+                return formatBytes(transfer.getSize());
+            case 2:
+                String message = transfer.getMessage();
+                return message == null || transfer.getState() == Transfer.State.COMPLETED
+                    ? transfer.getState().label()
+                    : transfer.getState().label() + ": " + message;
+            case 3:
+                return String.format("%.0f%%", transfer.getProgress() * 100);
+            case 4:
+                return transfer.getState() == Transfer.State.RUNNING
+                    ? formatBytes((long) transfer.getBytesPerSecond()) + "/s"
+                    : "";
+            default:
+                return null;
+        }
+    }
+
+    Transfer getTransfer(int row) {
+        return transfers.get(row);
+    }
+
+    void add(Transfer transfer) {
+        transfers.add(transfer);
+        fireTableRowsInserted(transfers.size() - 1, transfers.size() - 1);
+    }
+
+    void addAll(List<Transfer> added) {
+        if (added.isEmpty()) {
+            return;
+        }
+        int first = transfers.size();
+        transfers.addAll(added);
+        fireTableRowsInserted(first, transfers.size() - 1);
+    }
+
+    List<Transfer> getTransfers() {
+        return Collections.unmodifiableList(transfers);
+    }
+
+    /** 移除已结束的任务 */
+    void removeFinished() {
+        if (transfers.removeIf(transfer -> transfer.getState().isFinished())) {
+            fireTableDataChanged();
+        }
+    }
+
+    /** 重新读取所有任务的状态和进度 */
+    void refresh() {
+        if (!transfers.isEmpty()) {
+            fireTableRowsUpdated(0, transfers.size() - 1);
+        }
+    }
+
+    /**
+     * @return 未结束任务的总进度（0~100），没有未结束任务时返回 -1
+     */
+    int overallPercent() {
+        long size = 0;
+        long sent = 0;
+        for (Transfer transfer : transfers) {
+            if (!transfer.getState().isFinished()) {
+                size += transfer.getSize();
+                sent += Math.min(transfer.getBytesSent(), transfer.getSize());
+            }
+        }
+        if (size == 0) {
+            return -1;
+        }
+        return (int) (sent * 100 / size);
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        if (bytes < 1024L * 1024 * 1024) {
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+}
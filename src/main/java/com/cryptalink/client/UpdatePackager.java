@@ -0,0 +1,116 @@
+package com.cryptalink.client;
+
+import com.cryptalink.common.DeltaSync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 生成自动更新的发布文件：新版本 jar、从各旧版本到新版本的补丁，以及 {@link Updater} 读取的清单（jar 文件名加 .manifest）。
+ * 把输出目录中的文件放到更新地址所在的目录即可。相邻版本的 jar 大部分内容相同，补丁通常只有几十 KB。
+ *
+ * <p>用法: UpdatePackager 新版本号 新版本jar 输出目录 [旧版本号=旧版本jar ...]
+ */
+public class UpdatePackager {
+    private static final Logger logger = LoggerFactory.getLogger(UpdatePackager.class);
+
+    private UpdatePackager() {
+    }
+
+    /**
+     * 生成 oldFile 到 newFile 的补丁。jar 中一个条目变化后，之后所有条目在目录中的偏移都会变化，
+     * 这部分只能作为新数据发送，但压缩率很高，因此补丁整体用 gzip 压缩
+     */
+    static void createPatch(Path oldFile, Path newFile, Path patch) throws IOException {
+        DeltaSync.Signature signature = DeltaSync.signature(oldFile);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(newFile));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                 new GZIPOutputStream(Files.newOutputStream(patch))))) {
+            out.write(Updater.PATCH_MAGIC);
+            out.writeInt(signature.blockSize());
+            DeltaSync.delta(in, signature, new DeltaSync.DeltaSink() {
+                @Override
+                public void copy(int firstBlock, int blockCount) throws IOException {
+                    out.writeByte(Updater.OP_COPY);
+                    out.writeInt(firstBlock);
+                    out.writeInt(blockCount);
+                }
+
+                @Override
+                public void literal(byte[] data, int offset, int length) throws IOException {
+                    out.writeByte(Updater.OP_LITERAL);
+                    out.writeInt(length);
+                    out.write(data, offset, length);
+                }
+            });
+            out.writeByte(Updater.OP_END);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("用法: UpdatePackager 新版本号 新版本jar 输出目录 [旧版本号=旧版本jar ...]");
+            System.exit(2);
+        }
+        String version = args[0];
+        Path newJar = Paths.get(args[1]);
+        Path outputDir = Paths.get(args[2]);
+        try {
+            Files.createDirectories(outputDir);
+            String jarName = newJar.getFileName().toString();
+            Path publishedJar = outputDir.resolve(jarName);
+            if (!Files.exists(publishedJar) || !Files.isSameFile(newJar, publishedJar)) {
+                Files.copy(newJar, publishedJar, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            Properties manifest = new Properties();
+            manifest.setProperty("version", version);
+            manifest.setProperty("file", jarName);
+            manifest.setProperty("size", Long.toString(Files.size(newJar)));
+            manifest.setProperty("sha256", HexFormat.of().formatHex(Updater.sha256(newJar)));
+
+            for (int i = 3; i < args.length; i++) {
+                int separator = args[i].indexOf('=');
+                if (separator <= 0) {
+                    System.err.println("旧版本参数格式应为 版本号=jar路径: " + args[i]);
+                    System.exit(2);
+                }
+                String oldVersion = args[i].substring(0, separator);
+                Path oldJar = Paths.get(args[i].substring(separator + 1));
+                String patchName = jarName + ".from-" + oldVersion + ".patch";
+                Path patch = outputDir.resolve(patchName);
+                createPatch(oldJar, newJar, patch);
+
+                String prefix = "patch." + oldVersion + ".";
+                manifest.setProperty(prefix + "file", patchName);
+                manifest.setProperty(prefix + "size", Long.toString(Files.size(patch)));
+                manifest.setProperty(prefix + "sha256", HexFormat.of().formatHex(Updater.sha256(patch)));
+                manifest.setProperty(prefix + "base", HexFormat.of().formatHex(Updater.sha256(oldJar)));
+                logger.info("已生成 {} 到 {} 的补丁: {}，{} 字节", oldVersion, version, patchName, Files.size(patch));
+            }
+
+            Path manifestFile = outputDir.resolve(jarName + Updater.MANIFEST_SUFFIX);
+            try (Writer writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+                manifest.store(writer, "CryptaLink " + version);
+            }
+            logger.info("更新清单已写入: {}", manifestFile);
+        } catch (IOException e) {
+            logger.error("生成更新文件失败", e);
+            System.exit(1);
+        }
+    }
+}
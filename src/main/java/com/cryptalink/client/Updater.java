@@ -0,0 +1,402 @@
+package com.cryptalink.client;
+
+import com.cryptalink.common.DeltaSync;
+import com.cryptalink.common.VersionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 客户端自动更新。先下载更新包地址加 .manifest 的清单：清单中有从当前版本出发的补丁、且当前 jar 正是补丁的基础版本时，
+ * 只下载补丁并用当前 jar 重建新版本，否则下载完整的 jar。补丁和 jar 都按清单中的 SHA-256 校验，
+ * 下载中断后从已下载的位置继续（HTTP Range），校验通过的 jar 保存在本地缓存中，再次更新到同一版本时不再下载。
+ * 更新地址没有清单（HTTP 404）时退回到不校验的完整下载；清单因超时、服务器错误等原因无法读取时放弃本次更新，继续使用当前版本。
+ *
+ * <p>清单为 properties 格式，由 {@link UpdatePackager} 生成，文件名相对清单所在的地址：
+ * <pre>
+ * version=1.0.2
+ * file=cryptalink-client-jar-with-dependencies.jar
+ * size=新版本 jar 的字节数
+ * sha256=新版本 jar 的 SHA-256
+ * patch.1.0.1.file=cryptalink-client-jar-with-dependencies.jar.from-1.0.1.patch
+ * patch.1.0.1.size=补丁的字节数
+ * patch.1.0.1.sha256=补丁的 SHA-256
+ * patch.1.0.1.base=1.0.1 版本 jar 的 SHA-256
+ * </pre>
+ */
+public class Updater {
+    private static final Logger logger = LoggerFactory.getLogger(Updater.class);
+    static final String MANIFEST_SUFFIX = ".manifest";
+    static final byte[] PATCH_MAGIC = "CLPATCH1".getBytes(StandardCharsets.US_ASCII);
+    static final int OP_COPY = 'C';
+    static final int OP_LITERAL = 'L';
+    static final int OP_END = 'E';
+    private static final String PART_SUFFIX = ".part";
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int MAX_DOWNLOAD_ATTEMPTS = 5;
+    /** 缓存中保留的 jar 数量 */
+    private static final int CACHED_JARS = 3;
+
+    private final Path cacheDir;
+    private final String currentVersion;
+
+    public Updater() {
+        this(Paths.get(System.getProperty("user.home"), ".cryptalink", "updates"),
+            VersionManager.getInstance().getVersion());
+    }
+
+    /**
+     * @param cacheDir 下载缓存目录
+     * @param currentVersion 当前版本，用于在清单中查找补丁
+     */
+    public Updater(Path cacheDir, String currentVersion) {
+        this.cacheDir = cacheDir;
+        this.currentVersion = currentVersion;
+    }
+
+    /**
+     * @return 正在运行的 jar；从 class 目录运行时返回 null
+     */
+    public static Path currentJar() {
+        try {
+            Path location = new File(Updater.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toPath();
+            return Files.isRegularFile(location) ? location : null;
+        } catch (URISyntaxException | SecurityException e) {
+            logger.error("无法确定当前 jar 的位置", e);
+            return null;
+        }
+    }
+
+    /**
+     * 取得新版本的 jar
+     * @param updateUrl 服务器给出的更新包地址
+     * @param currentJar 正在运行的 jar，作为补丁的基础，为 null 时总是下载完整版本
+     * @return 缓存中的新版本 jar，失败时返回 null
+     */
+    public Path fetch(String updateUrl, Path currentJar) {
+        try {
+            Files.createDirectories(cacheDir);
+            URL manifestUrl = new URL(updateUrl + MANIFEST_SUFFIX);
+            Properties manifest = readManifest(manifestUrl);
+            if (manifest == null) {
+                // 只有确认清单不存在（404）时才退回到旧的完整下载；其他错误说明清单可能存在但取不到，不能跳过校验
+                logger.warn("更新地址没有提供清单（{} 不存在），下载完整的更新包，无法校验", manifestUrl);
+                Path target = cacheDir.resolve("unverified-" + fileName(updateUrl));
+                download(new URL(updateUrl), target, -1, null);
+                return target;
+            }
+            return fetchVerified(manifestUrl, manifest, currentJar);
+        } catch (IOException | RuntimeException e) {
+            logger.error("下载更新失败", e);
+            return null;
+        }
+    }
+
+    private Path fetchVerified(URL manifestUrl, Properties manifest, Path currentJar) throws IOException {
+        String version = require(manifest, "version");
+        String file = require(manifest, "file");
+        long size = Long.parseLong(require(manifest, "size"));
+        byte[] sha256 = parseHex(require(manifest, "sha256"));
+        Path target = cacheDir.resolve(version + "-" + fileName(file));
+
+        if (Files.isRegularFile(target) && MessageDigest.isEqual(sha256(target), sha256)) {
+            logger.info("使用缓存中的 {} 版本: {}", version, target);
+            return target;
+        }
+        if (currentJar == null || !patch(manifestUrl, manifest, currentJar, target, sha256)) {
+            logger.info("下载完整的 {} 版本，{} 字节", version, size);
+            download(new URL(manifestUrl, file), target, size, sha256);
+        }
+        prune(target);
+        return target;
+    }
+
+    /**
+     * 下载从当前版本到新版本的补丁并应用
+     * @return 已生成校验通过的新版本时返回 true；没有可用的补丁或补丁失败时返回 false，应下载完整版本
+     */
+    private boolean patch(URL manifestUrl, Properties manifest, Path currentJar, Path target, byte[] sha256) {
+        String prefix = "patch." + currentVersion + ".";
+        String patchFile = manifest.getProperty(prefix + "file");
+        if (patchFile == null) {
+            logger.info("清单中没有从 {} 版本开始的补丁", currentVersion);
+            return false;
+        }
+        Path patch = cacheDir.resolve(fileName(patchFile));
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            if (!MessageDigest.isEqual(sha256(currentJar), parseHex(require(manifest, prefix + "base")))) {
+                logger.warn("当前 jar 与补丁的基础版本不一致: {}", currentJar);
+                return false;
+            }
+            long patchSize = Long.parseLong(require(manifest, prefix + "size"));
+            download(new URL(manifestUrl, patchFile), patch, patchSize, parseHex(require(manifest, prefix + "sha256")));
+            byte[] actual = applyPatch(currentJar, patch, temp);
+            if (!MessageDigest.isEqual(actual, sha256)) {
+                logger.warn("补丁生成的 jar 校验失败");
+                return false;
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("已用补丁生成新版本，下载 {} 字节", patchSize);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("补丁更新失败: {}", e.getMessage());
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+                Files.deleteIfExists(patch);
+            } catch (IOException e) {
+                logger.warn("删除临时文件失败", e);
+            }
+        }
+    }
+
+    /**
+     * 用基础文件和补丁生成新文件
+     * @return 新文件的 SHA-256
+     */
+    static byte[] applyPatch(Path base, Path patch, Path target) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(patch))))) {
+            byte[] magic = in.readNBytes(PATCH_MAGIC.length);
+            int blockSize = in.readInt();
+            if (!Arrays.equals(magic, PATCH_MAGIC)
+                    || blockSize < DeltaSync.MIN_BLOCK_SIZE || blockSize > DeltaSync.MAX_BLOCK_SIZE) {
+                throw new IOException("补丁格式错误");
+            }
+            try (DeltaSync.Patcher patcher = new DeltaSync.Patcher(base, blockSize,
+                    new BufferedOutputStream(Files.newOutputStream(target)))) {
+                while (true) {
+                    int op = in.readUnsignedByte();
+                    if (op == OP_END) {
+                        return patcher.digest();
+                    } else if (op == OP_COPY) {
+                        patcher.copy(in.readInt(), in.readInt());
+                    } else if (op == OP_LITERAL) {
+                        int length = in.readInt();
+                        byte[] data = in.readNBytes(Math.max(0, length));
+                        if (length <= 0 || data.length != length) {
+                            throw new IOException("补丁数据不完整");
+                        }
+                        patcher.literal(data, 0, length);
+                    } else {
+                        throw new IOException("补丁格式错误");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 清单内容；服务器确认清单不存在（HTTP 404）时返回 null
+     * @throws IOException 超时、服务器错误等其他原因无法读取清单
+     */
+    private static Properties readManifest(URL manifestUrl) throws IOException {
+        URLConnection connection = open(manifestUrl, 0);
+        try {
+            if (connection instanceof HttpURLConnection http) {
+                int status = http.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_FOUND) {
+                    return null;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("读取更新清单失败: HTTP " + status);
+                }
+            }
+            try (InputStream in = connection.getInputStream()) {
+                Properties manifest = new Properties();
+                manifest.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+                return manifest;
+            }
+        } catch (FileNotFoundException e) {
+            // 非 HTTP 地址（如 file:）的清单不存在
+            return null;
+        } finally {
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * 下载到 target。先写入同名的 .part 文件，中断后从已下载的位置继续，完成并校验通过后改名为 target
+     * @param size 文件大小，未知时为 -1
+     * @param sha256 期望的 SHA-256，为 null 时不校验
+     */
+    private static void download(URL url, Path target, long size, byte[] sha256) throws IOException {
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        if (size < 0) {
+            // 无法确认之前留下的部分属于同一个文件
+            Files.deleteIfExists(part);
+        }
+        IOException lastError = null;
+        for (int attempt = 1; attempt <= MAX_DOWNLOAD_ATTEMPTS; attempt++) {
+            try {
+                long offset = Files.exists(part) ? Files.size(part) : 0;
+                if (size >= 0 && offset > size) {
+                    Files.delete(part);
+                    offset = 0;
+                }
+                if (offset > 0) {
+                    logger.info("从第 {} 字节继续下载 {}", offset, url);
+                }
+                if (size < 0 || offset < size) {
+                    transfer(url, part, offset);
+                }
+                if (size >= 0 && Files.size(part) < size) {
+                    // 连接提前结束，保留已下载的部分，下次从这里继续
+                    throw new IOException("下载不完整: " + Files.size(part) + "/" + size + " 字节");
+                }
+                if (sha256 != null && !MessageDigest.isEqual(sha256(part), sha256)) {
+                    // 已下载的部分可能已损坏，从头下载
+                    Files.delete(part);
+                    throw new IOException("下载的文件校验失败");
+                }
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return;
+            } catch (IOException e) {
+                lastError = e;
+                logger.warn("第 {} 次下载 {} 失败: {}", attempt, url, e.getMessage());
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * 把 url 的内容从 offset 开始追加到 part。服务器不支持 Range 时从头写入
+     */
+    private static void transfer(URL url, Path part, long offset) throws IOException {
+        URLConnection connection = open(url, offset);
+        try {
+            boolean append = false;
+            if (connection instanceof HttpURLConnection http) {
+                int status = http.getResponseCode();
+                if (status == 416 && offset > 0) {
+                    // 已下载完整
+                    return;
+                }
+                if (status == HttpURLConnection.HTTP_PARTIAL) {
+                    String range = http.getHeaderField("Content-Range");
+                    if (range == null || !range.startsWith("bytes " + offset + "-")) {
+                        throw new IOException("服务器返回的范围不正确: " + range);
+                    }
+                    append = true;
+                } else if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + status);
+                }
+            }
+            try (InputStream in = connection.getInputStream();
+                 OutputStream out = Files.newOutputStream(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING)) {
+                in.transferTo(out);
+            }
+        } finally {
+            disconnect(connection);
+        }
+    }
+
+    private static URLConnection open(URL url, long offset) throws IOException {
+        URLConnection connection = url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        return connection;
+    }
+
+    private static void disconnect(URLConnection connection) {
+        if (connection instanceof HttpURLConnection http) {
+            http.disconnect();
+        }
+    }
+
+    /**
+     * 只保留最近的几个 jar
+     */
+    private void prune(Path keep) {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            List<Path> jars = files
+                .filter(path -> path.getFileName().toString().endsWith(".jar") && !path.equals(keep))
+                .sorted(Comparator.comparing(Updater::lastModified).reversed())
+                .toList();
+            for (Path jar : jars.subList(Math.min(jars.size(), CACHED_JARS - 1), jars.size())) {
+                Files.deleteIfExists(jar);
+            }
+        } catch (IOException e) {
+            logger.warn("清理更新缓存失败", e);
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static byte[] sha256(Path file) throws IOException {
+        MessageDigest digest = DeltaSync.newContentDigest();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return digest.digest();
+    }
+
+    private static String require(Properties manifest, String key) throws IOException {
+        String value = manifest.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IOException("更新清单缺少 " + key);
+        }
+        return value.trim();
+    }
+
+    private static byte[] parseHex(String hex) throws IOException {
+        try {
+            return HexFormat.of().parseHex(hex);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("更新清单中的校验和无效: " + hex);
+        }
+    }
+
+    /** 地址或相对路径中的文件名部分，避免写到缓存目录之外 */
+    private static String fileName(String path) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int query = name.indexOf('?');
+        name = query < 0 ? name : name.substring(0, query);
+        name = name.replace('\\', '_');
+        return name.isEmpty() || name.equals(".") || name.equals("..") ? "update.jar" : name;
+    }
+}
@@ -0,0 +1,405 @@
+package com.cryptalink.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * rsync 式的增量同步：接收方把已有文件按固定大小分块，计算每块的弱校验和（可滚动）与强校验和（MD5）；
+ * 发送方用滚动校验和在新文件的每个字节位置查找相同的块，只发送找不到对应块的字面数据和块引用，
+ * 接收方再用已有文件和这些指令重建新文件。
+ * 本类只负责计算，不涉及传输格式。
+ */
+public final class DeltaSync {
+    public static final int MIN_BLOCK_SIZE = 2048;
+    public static final int MAX_BLOCK_SIZE = 128 * 1024;
+    /** 连续的字面数据攒到此大小再交给接收方 */
+    private static final int LITERAL_FLUSH_BYTES = 48 * 1024;
+    private static final int TAG_BITS = 16;
+    private static final int STRONG_LENGTH = 16;
+    private static final String STRONG_ALGORITHM = "MD5";
+    private static final String CONTENT_ALGORITHM = "SHA-256";
+
+    private DeltaSync() {
+    }
+
+    /**
+     * 已有文件的分块校验和，最后一块可能不足 blockSize
+     */
+    public record Signature(int blockSize, long length, int[] weak, byte[][] strong) {
+        public int blockCount() {
+            return weak.length;
+        }
+
+        /** 第 index 块的长度 */
+        public int blockLength(int index) {
+            return (int) Math.min(blockSize, length - (long) index * blockSize);
+        }
+
+        /**
+         * 序列化为字节：块大小、文件长度、块数，随后每块 4 字节弱校验和与 16 字节强校验和
+         */
+        public byte[] toBytes() {
+            ByteBuffer buffer = ByteBuffer.allocate(16 + weak.length * (4 + STRONG_LENGTH));
+            buffer.putInt(blockSize).putLong(length).putInt(weak.length);
+            for (int i = 0; i < weak.length; i++) {
+                buffer.putInt(weak[i]).put(strong[i]);
+            }
+            return buffer.array();
+        }
+
+        public static Signature fromBytes(byte[] data) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            if (data.length < 16) {
+                throw new IOException("签名数据不完整");
+            }
+            int blockSize = buffer.getInt();
+            long length = buffer.getLong();
+            int count = buffer.getInt();
+            if (blockSize <= 0 || length < 0 || count < 0 || count != blockCountFor(length, blockSize)
+                    || buffer.remaining() != (long) count * (4 + STRONG_LENGTH)) {
+                throw new IOException("签名数据无效");
+            }
+            int[] weak = new int[count];
+            byte[][] strong = new byte[count][STRONG_LENGTH];
+            for (int i = 0; i < count; i++) {
+                weak[i] = buffer.getInt();
+                buffer.get(strong[i]);
+            }
+            return new Signature(blockSize, length, weak, strong);
+        }
+    }
+
+    /**
+     * 接收增量指令：引用已有文件中连续的若干块，或直接给出字面数据
+     */
+    public interface DeltaSink {
+        void copy(int firstBlock, int blockCount) throws IOException;
+
+        void literal(byte[] data, int offset, int length) throws IOException;
+    }
+
+    /**
+     * 按文件大小选择块大小：约为长度的平方根，块数和每块的字面数据开销大致平衡。1 GB 的文件约 32 KB 一块
+     */
+    public static int blockSizeFor(long length) {
+        long size = Long.highestOneBit(Math.max(1, (long) Math.sqrt(length)));
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+    }
+
+    private static int blockCountFor(long length, int blockSize) {
+        return (int) ((length + blockSize - 1) / blockSize);
+    }
+
+    public static Signature signature(Path file) throws IOException {
+        long length = Files.size(file);
+        try (InputStream in = Files.newInputStream(file)) {
+            return signature(in, length, blockSizeFor(length));
+        }
+    }
+
+    public static Signature signature(InputStream in, long length, int blockSize) throws IOException {
+        int count = blockCountFor(length, blockSize);
+        int[] weak = new int[count];
+        byte[][] strong = new byte[count][];
+        MessageDigest md5 = newDigest(STRONG_ALGORITHM);
+        byte[] block = new byte[blockSize];
+        for (int i = 0; i < count; i++) {
+            int blockLength = (int) Math.min(blockSize, length - (long) i * blockSize);
+            if (in.readNBytes(block, 0, blockLength) != blockLength) {
+                throw new IOException("文件在计算签名时被修改");
+            }
+            weak[i] = weakChecksum(block, 0, blockLength);
+            md5.update(block, 0, blockLength);
+            strong[i] = md5.digest();
+        }
+        return new Signature(blockSize, length, weak, strong);
+    }
+
+    /**
+     * 弱校验和：低 16 位为字节和，高 16 位为按位置加权的字节和，窗口右移一个字节时可以在常数时间内更新
+     */
+    static int weakChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int x = data[offset + i] & 0xFF;
+            a += x;
+            b += (length - i) * x;
+        }
+        return ((b & 0xFFFF) << 16) | (a & 0xFFFF);
+    }
+
+    /**
+     * 比较新文件与签名，生成增量指令。相邻的块引用合并为一条
+     */
+    public static void delta(InputStream in, Signature base, DeltaSink sink) throws IOException {
+        new DeltaGenerator(base, sink).run(in);
+    }
+
+    /**
+     * 增量生成过程：窗口保存在长度为块大小的环形缓冲区中，未匹配的字节移出窗口时成为字面数据
+     */
+    private static final class DeltaGenerator {
+        private final Signature base;
+        private final DeltaSink sink;
+        private final int blockSize;
+        // 按弱校验和的 16 位标签分桶，heads 是桶中第一个块的下标加 1，next 链接同一个桶的其他块
+        private final int[] heads = new int[1 << TAG_BITS];
+        private final int[] next;
+        private final MessageDigest md5 = newDigest(STRONG_ALGORITHM);
+        private final byte[] window;
+        private final byte[] literal = new byte[LITERAL_FLUSH_BYTES];
+        private int literalLength;
+        private int pendingFirst = -1;
+        private int pendingCount;
+
+        DeltaGenerator(Signature base, DeltaSink sink) {
+            this.base = base;
+            this.sink = sink;
+            this.blockSize = base.blockSize();
+            this.window = new byte[blockSize];
+            this.next = new int[base.blockCount()];
+            // 倒序插入，同一个桶中下标小的块排在前面
+            for (int i = base.blockCount() - 1; i >= 0; i--) {
+                if (base.blockLength(i) == blockSize) {
+                    int tag = tag(base.weak()[i]);
+                    next[i] = heads[tag];
+                    heads[tag] = i + 1;
+                }
+            }
+        }
+
+        private static int tag(int weak) {
+            return (weak ^ (weak >>> TAG_BITS)) & ((1 << TAG_BITS) - 1);
+        }
+
+        void run(InputStream in) throws IOException {
+            int count = in.readNBytes(window, 0, blockSize);
+            int start = 0;
+            int a = 0;
+            int b = 0;
+            if (count == blockSize) {
+                int weak = weakChecksum(window, 0, blockSize);
+                a = weak & 0xFFFF;
+                b = weak >>> 16;
+            }
+            while (count == blockSize) {
+                int match = find((b << 16) | a, start);
+                if (match >= 0) {
+                    emitCopy(match);
+                    count = in.readNBytes(window, 0, blockSize);
+                    start = 0;
+                    if (count == blockSize) {
+                        int weak = weakChecksum(window, 0, blockSize);
+                        a = weak & 0xFFFF;
+                        b = weak >>> 16;
+                    }
+                    continue;
+                }
+                int c = in.read();
+                int out = window[start] & 0xFF;
+                emitLiteral(window[start]);
+                if (c < 0) {
+                    // 剩余的窗口不足一块，按最后一块处理
+                    start = (start + 1) % blockSize;
+                    count = blockSize - 1;
+                    break;
+                }
+                window[start] = (byte) c;
+                start = (start + 1) % blockSize;
+                a = (a - out + c) & 0xFFFF;
+                b = (b - blockSize * out + a) & 0xFFFF;
+            }
+            finishTail(start, count);
+            flush();
+        }
+
+        /**
+         * 窗口内容与已有文件的最后一个不足一块的块相同时引用它，否则作为字面数据
+         */
+        private void finishTail(int start, int count) throws IOException {
+            byte[] tail = new byte[count];
+            for (int i = 0; i < count; i++) {
+                tail[i] = window[(start + i) % blockSize];
+            }
+            int last = base.blockCount() - 1;
+            if (count > 0 && last >= 0 && base.blockLength(last) == count
+                    && weakChecksum(tail, 0, count) == base.weak()[last]
+                    && Arrays.equals(md5.digest(tail), base.strong()[last])) {
+                emitCopy(last);
+                return;
+            }
+            for (byte value : tail) {
+                emitLiteral(value);
+            }
+        }
+
+        private int find(int weak, int start) {
+            int candidate = heads[tag(weak)];
+            if (candidate == 0) {
+                return -1;
+            }
+            byte[] strong = null;
+            for (; candidate != 0; candidate = next[candidate - 1]) {
+                int index = candidate - 1;
+                if (base.weak()[index] != weak) {
+                    continue;
+                }
+                if (strong == null) {
+                    md5.update(window, start, blockSize - start);
+                    md5.update(window, 0, start);
+                    strong = md5.digest();
+                }
+                if (Arrays.equals(strong, base.strong()[index])) {
+                    // 优先延续前一个块引用，使相邻引用可以合并
+                    int following = pendingFirst + pendingCount;
+                    if (pendingFirst >= 0 && index != following && following < base.blockCount()
+                            && base.weak()[following] == weak && Arrays.equals(strong, base.strong()[following])) {
+                        return following;
+                    }
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        private void emitCopy(int block) throws IOException {
+            flushLiteral();
+            if (pendingFirst >= 0 && block == pendingFirst + pendingCount) {
+                pendingCount++;
+                return;
+            }
+            flushCopy();
+            pendingFirst = block;
+            pendingCount = 1;
+        }
+
+        private void emitLiteral(byte value) throws IOException {
+            flushCopy();
+            literal[literalLength++] = value;
+            if (literalLength == literal.length) {
+                flushLiteral();
+            }
+        }
+
+        private void flushCopy() throws IOException {
+            if (pendingFirst >= 0) {
+                sink.copy(pendingFirst, pendingCount);
+                pendingFirst = -1;
+                pendingCount = 0;
+            }
+        }
+
+        private void flushLiteral() throws IOException {
+            if (literalLength > 0) {
+                sink.literal(literal, 0, literalLength);
+                literalLength = 0;
+            }
+        }
+
+        private void flush() throws IOException {
+            flushLiteral();
+            flushCopy();
+        }
+    }
+
+    /**
+     * 用已有文件和增量指令重建新文件，同时计算新文件的 SHA-256 摘要，供接收方核对
+     */
+    public static final class Patcher implements DeltaSink, Closeable {
+        private final FileChannel base;
+        private final long baseLength;
+        private final int blockSize;
+        private final OutputStream target;
+        private final MessageDigest digest = newDigest(CONTENT_ALGORITHM);
+        private final ByteBuffer buffer;
+        private long length;
+        private byte[] result;
+
+        /**
+         * @param base 已有文件，null 表示没有已有文件，只接受字面数据
+         * @param target 新文件的输出，关闭 Patcher 时一并关闭
+         */
+        public Patcher(Path base, int blockSize, OutputStream target) throws IOException {
+            this.base = base == null ? null : FileChannel.open(base, StandardOpenOption.READ);
+            this.baseLength = this.base == null ? 0 : this.base.size();
+            this.blockSize = blockSize;
+            this.target = target;
+            this.buffer = ByteBuffer.allocate(Math.max(blockSize, 64 * 1024));
+        }
+
+        @Override
+        public void copy(int firstBlock, int blockCount) throws IOException {
+            long position = (long) firstBlock * blockSize;
+            long end = Math.min(baseLength, position + (long) blockCount * blockSize);
+            if (base == null || firstBlock < 0 || blockCount <= 0 || position >= end) {
+                throw new IOException("块引用超出已有文件: " + firstBlock + "+" + blockCount);
+            }
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = base.read(buffer, position);
+                if (read <= 0) {
+                    throw new IOException("读取已有文件失败");
+                }
+                literal(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+
+        @Override
+        public void literal(byte[] data, int offset, int length) throws IOException {
+            target.write(data, offset, length);
+            digest.update(data, offset, length);
+            this.length += length;
+        }
+
+        /** 已写入的长度 */
+        public long length() {
+            return length;
+        }
+
+        /** 已写入内容的 SHA-256 摘要，调用后不能再写入 */
+        public byte[] digest() {
+            if (result == null) {
+                result = digest.digest();
+            }
+            return result.clone();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                target.close();
+            } finally {
+                if (base != null) {
+                    base.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 创建计算内容摘要用的 SHA-256
+     */
+    public static MessageDigest newContentDigest() {
+        return newDigest(CONTENT_ALGORITHM);
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM 不支持 " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.cryptalink.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 有行数上限的日志显示：文本框中只保留最近的若干行，旧行从开头删除，内存和追加耗时不随运行时间增长。
+ * 任意线程都可以追加，同一轮事件处理中追加的行合并为一次文档修改。
+ * 可选把全部日志同时写入文件，写文件在单独的线程中进行。
+ */
+public final class LogView {
+    private static final Logger logger = LoggerFactory.getLogger(LogView.class);
+    public static final int DEFAULT_MAX_LINES = 5000;
+    private static final String MAX_LINES_PROPERTY = "cryptalink.log.maxLines";
+    private static final String SPILL_DIR_PROPERTY = "cryptalink.log.spillDir";
+
+    private final JTextArea textArea;
+    private final int maxLines;
+    // 当前显示的行，环形存放，淘汰时据此计算要从文档开头删除的长度
+    private final String[] lines;
+    private int head;
+    private int count;
+
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private ExecutorService spillExecutor;
+    private BufferedWriter spillWriter;
+
+    public LogView(JTextArea textArea, int maxLines) {
+        if (maxLines <= 0) {
+            throw new IllegalArgumentException("行数上限必须为正数: " + maxLines);
+        }
+        this.textArea = textArea;
+        this.maxLines = maxLines;
+        this.lines = new String[maxLines];
+    }
+
+    /**
+     * 按系统属性创建日志显示：cryptalink.log.maxLines 设置行数上限，
+     * cryptalink.log.spillDir 设置后日志同时写入该目录下的 name.log
+     */
+    public static LogView attach(JTextArea textArea, String name) {
+        LogView view = new LogView(textArea, Integer.getInteger(MAX_LINES_PROPERTY, DEFAULT_MAX_LINES));
+        String spillDir = System.getProperty(SPILL_DIR_PROPERTY);
+        if (spillDir != null && !spillDir.isBlank()) {
+            try {
+                view.spillTo(Paths.get(spillDir, name + ".log"));
+            } catch (IOException e) {
+                logger.error("打开日志文件失败: ", e);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * 之后追加的日志同时写入文件（追加模式）
+     */
+    public synchronized void spillTo(Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (spillExecutor == null) {
+            spillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-spill");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        BufferedWriter previous = spillWriter;
+        spillWriter = writer;
+        if (previous != null) {
+            spillExecutor.execute(() -> closeQuietly(previous));
+        }
+    }
+
+    /**
+     * 追加一行日志，可以在任意线程调用
+     */
+    public void append(String line) {
+        pending.add(line);
+        if (flushScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * 清空显示，清空前已追加的日志不会再显示。只能在事件分发线程中调用
+     */
+    public void clear() {
+        flush();
+        head = 0;
+        count = 0;
+        Arrays.fill(lines, null);
+        textArea.setText("");
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<String> batch = new ArrayList<>();
+        String line;
+        while ((line = pending.poll()) != null) {
+            batch.add(line);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        spill(batch);
+
+        // 一批超过上限时只有最后 maxLines 行会留下
+        int skip = Math.max(0, batch.size() - maxLines);
+        int removeChars = 0;
+        StringBuilder text = new StringBuilder();
+        for (int i = skip; i < batch.size(); i++) {
+            String added = batch.get(i);
+            if (count == maxLines) {
+                removeChars += lines[head].length() + 1;
+                lines[head] = added;
+                head = (head + 1) % maxLines;
+            } else {
+                lines[(head + count) % maxLines] = added;
+                count++;
+            }
+            text.append(added).append('\n');
+        }
+
+        Document document = textArea.getDocument();
+        try {
+            if (removeChars >= document.getLength()) {
+                textArea.setText(text.toString());
+            } else {
+                document.insertString(document.getLength(), text.toString(), null);
+                if (removeChars > 0) {
+                    document.remove(0, removeChars);
+                }
+            }
+        } catch (BadLocationException e) {
+            logger.error("更新日志显示失败", e);
+        }
+        // 滚动到最新的日志
+        textArea.setCaretPosition(document.getLength());
+    }
+
+    private void spill(List<String> batch) {
+        BufferedWriter writer;
+        synchronized (this) {
+            writer = spillWriter;
+        }
+        if (writer == null) {
+            return;
+        }
+        spillExecutor.execute(() -> {
+            try {
+                for (String line : batch) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+                writer.flush();
+            } catch (IOException e) {
+                logger.error("写入日志文件失败: ", e);
+            }
+        });
+    }
+
+    private static void closeQuietly(BufferedWriter writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("关闭日志文件失败: ", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 无界面的批量隐写扫描器：遍历上传目录，并行检测每个文件，并把结果批量写回数据库。
+ * 待检测任务和待写入结果都使用有界队列，内存占用与目录大小无关；
+ * 每批结果与扫描断点在同一事务中提交，中断后可用 --resume 从断点继续。
+ *
+ * <p>用法: BatchScanner [上传目录] [--threads N] [--resume]
+ */
+public class BatchScanner {
+    private static final Logger logger = LoggerFactory.getLogger(BatchScanner.class);
+    private static final int QUEUE_CAPACITY_PER_THREAD = 4;
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final long FLUSH_INTERVAL_MS = 2000;
+    private static final long REPORT_INTERVAL_SECONDS = 5;
+
+    private final Path uploadsDir;
+    private final int threads;
+    private final boolean resume;
+    private final DatabaseManager dbManager;
+    private final BlockingQueue<UploadRecord> pendingVerdicts = new ArrayBlockingQueue<>(FLUSH_BATCH_SIZE * 4);
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong scannedBytes = new AtomicLong();
+    private final AtomicLong stegFiles = new AtomicLong();
+    private final AtomicLong skippedFiles = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private volatile boolean scanning;
+    private volatile boolean stopping;
+    private long startTime;
+
+    public BatchScanner(Path uploadsDir, int threads, boolean resume) {
+        this.uploadsDir = uploadsDir;
+        this.threads = threads;
+        this.resume = resume;
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    public void run() throws IOException, InterruptedException {
+        Set<String> done;
+        if (resume) {
+            done = dbManager.loadScanProgress();
+            logger.info("从断点继续扫描，已完成 {} 个文件", done.size());
+        } else {
+            dbManager.clearScanProgress();
+            done = Collections.emptySet();
+        }
+
+        // 队列满时由遍历线程自己执行检测，遍历速度自然受限于检测速度
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * QUEUE_CAPACITY_PER_THREAD), new ThreadPoolExecutor.CallerRunsPolicy());
+        Thread flusher = new Thread(this::flushVerdicts, "scan-flusher");
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+
+        scanning = true;
+        startTime = System.nanoTime();
+        flusher.start();
+        reporter.scheduleAtFixedRate(() -> report("扫描进度"), REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        logger.info("开始扫描目录: {}，线程数: {}", uploadsDir.toAbsolutePath(), threads);
+
+        try (Stream<Path> files = Files.walk(uploadsDir)) {
+            files.takeWhile(path -> !stopping)
+                .filter(Files::isRegularFile)
+                .forEach(path -> {
+                    String filename = uploadsDir.relativize(path).toString().replace('\\', '/');
+                    if (done.contains(filename)) {
+                        skippedFiles.incrementAndGet();
+                        return;
+                    }
+                    workers.execute(() -> scan(path, filename));
+                });
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            scanning = false;
+            flusher.join();
+            reporter.shutdownNow();
+            report(stopping ? "扫描已中断" : "扫描完成");
+            finished.countDown();
+        }
+    }
+
+    private void scan(Path path, String filename) {
+        if (stopping) {
+            return;
+        }
+        try {
+            long size = Files.size(path);
+            long start = System.nanoTime();
+            StegVerdict verdict = StegAnalyzer.detect(filename, path);
+            long scanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (verdict.hasSteganography()) {
+                stegFiles.incrementAndGet();
+            }
+            // 数据库中没有记录的文件按这些信息插入，与上传的记录一样计入统计
+            pendingVerdicts.put(new UploadRecord(filename, verdict.hasSteganography(), verdict.hiddenMessage(),
+                size, null, null, 0, scanMillis));
+            scannedFiles.incrementAndGet();
+            scannedBytes.addAndGet(size);
+        } catch (IOException | RuntimeException e) {
+            // 单个损坏的图像只计为失败；拒绝策略为 CallerRunsPolicy 时这里可能运行在遍历线程上，异常不能中断遍历
+            failedFiles.incrementAndGet();
+            logger.error("扫描文件失败: {}", filename, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushVerdicts() {
+        List<UploadRecord> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        long lastFlush = System.currentTimeMillis();
+        try {
+            while (scanning || !pendingVerdicts.isEmpty()) {
+                UploadRecord verdict = pendingVerdicts.poll(100, TimeUnit.MILLISECONDS);
+                if (verdict != null) {
+                    batch.add(verdict);
+                    pendingVerdicts.drainTo(batch, FLUSH_BATCH_SIZE - batch.size());
+                }
+                long now = System.currentTimeMillis();
+                if (batch.size() >= FLUSH_BATCH_SIZE || (!batch.isEmpty() && now - lastFlush >= FLUSH_INTERVAL_MS)) {
+                    dbManager.saveScanVerdicts(batch);
+                    batch.clear();
+                    lastFlush = now;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!batch.isEmpty()) {
+                dbManager.saveScanVerdicts(batch);
+            }
+        }
+    }
+
+    private void report(String title) {
+        double seconds = Math.max((System.nanoTime() - startTime) / 1e9, 1e-3);
+        long files = scannedFiles.get();
+        double megabytes = scannedBytes.get() / (1024.0 * 1024.0);
+        logger.info("{}: 已扫描 {} 个文件 ({} MB)，跳过 {}，检测到隐写 {}，失败 {}，用时 {} 秒，速度 {} 文件/秒，{} MB/秒",
+            title, files, String.format("%.1f", megabytes), skippedFiles.get(), stegFiles.get(), failedFiles.get(),
+            String.format("%.1f", seconds), String.format("%.1f", files / seconds), String.format("%.2f", megabytes / seconds));
+    }
+
+    /**
+     * 请求停止扫描并等待已完成的结果写入数据库
+     */
+    public void stop() {
+        stopping = true;
+        try {
+            finished.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) {
+        Path uploadsDir = Paths.get("uploads");
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--resume" -> resume = true;
+                default -> uploadsDir = Paths.get(args[i]);
+            }
+        }
+
+        BatchScanner scanner = new BatchScanner(uploadsDir, threads, resume);
+        Runtime.getRuntime().addShutdownHook(new Thread(scanner::stop));
+        try {
+            scanner.run();
+        } catch (Exception e) {
+            logger.error("批量扫描失败", e);
+        } finally {
+            DatabaseManager.getInstance().close();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+
+/**
+ * 图像的最低位平面：一次性把所有颜色分量的最低位打包成位图，之后按隐写位置编号
+ * （像素下标 * 3 + 颜色分量）查询，不再逐位调用 getRGB。
+ *
+ * <p>字节交错的栅格（解码后的BMP、PNG）直接打包底层样本数组的最低位。
+ * JVM 以 {@code --add-modules jdk.incubator.vector} 启动时自动使用向量化的打包实现，一次处理一整个向量的样本，
+ * 否则使用标量实现，两者结果完全相同。
+ */
+final class BitPlane {
+    private static final Logger logger = LoggerFactory.getLogger(BitPlane.class);
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_PACKER = "com.cryptalink.server.VectorBitPlanePacker";
+    private static final Packer PACKER = selectPacker();
+
+    private final long[] bits;
+    private final int pixelStride;
+    private final int[] bandOffsets;
+
+    /**
+     * 把样本数组中一段连续样本的最低位依次打包到位图中，第 i 个样本对应第 i 位
+     */
+    interface Packer {
+        void pack(byte[] samples, int offset, int length, long[] bits);
+    }
+
+    private BitPlane(long[] bits, int pixelStride, int[] bandOffsets) {
+        this.bits = bits;
+        this.pixelStride = pixelStride;
+        this.bandOffsets = bandOffsets;
+    }
+
+    /**
+     * 提取图像的最低位平面
+     */
+    static BitPlane of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        WritableRaster raster = image.getRaster();
+        boolean untranslated = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+        if (untranslated && raster.getNumBands() >= 3 && raster.getDataBuffer() instanceof DataBufferByte bytes
+                && raster.getSampleModel() instanceof ComponentSampleModel model && model.getSampleSize(0) == 8
+                && model.getScanlineStride() == width * model.getPixelStride()) {
+            // 行间没有填充时整个栅格是一段连续样本，按底层顺序打包，查询时再按波段偏移换算
+            int pixelStride = model.getPixelStride();
+            int length = width * height * pixelStride;
+            long[] bits = new long[(length + 63) >>> 6];
+            PACKER.pack(bytes.getData(), bytes.getOffset(), length, bits);
+            int[] offsets = model.getBandOffsets();
+            return new BitPlane(bits, pixelStride, new int[]{offsets[0], offsets[1], offsets[2]});
+        }
+
+        // 其余格式按位置顺序直接打包 R, G, B 的最低位
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        long[] bits = new long[(pixels.length * 3 + 63) >>> 6];
+        for (int i = 0, position = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            for (int shift = 16; shift >= 0; shift -= 8, position++) {
+                bits[position >>> 6] |= (long) ((pixel >>> shift) & 1) << position;
+            }
+        }
+        return new BitPlane(bits, 3, new int[]{0, 1, 2});
+    }
+
+    /**
+     * @param position 隐写位置编号：像素下标 * 3 + 颜色分量（0=R, 1=G, 2=B）
+     */
+    int get(int position) {
+        int index = (position / 3) * pixelStride + bandOffsets[position % 3];
+        return (int) (bits[index >>> 6] >>> index) & 1;
+    }
+
+    /**
+     * 标量实现：对齐的部分每 64 个样本拼成一个字后整体写入
+     */
+    static void packScalar(byte[] samples, int offset, int from, int to, long[] bits) {
+        int i = from;
+        for (; (i & 63) != 0 && i < to; i++) {
+            bits[i >>> 6] |= (long) (samples[offset + i] & 1) << i;
+        }
+        for (; i + 64 <= to; i += 64) {
+            long word = 0;
+            for (int j = 0; j < 64; j++) {
+                word |= (long) (samples[offset + i + j] & 1) << j;
+            }
+            bits[i >>> 6] = word;
+        }
+        for (; i < to; i++) {
+            bits[i >>> 6] |= (long) (samples[offset + i] & 1) << i;
+        }
+    }
+
+    private static Packer selectPacker() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                Packer packer = (Packer) Class.forName(VECTOR_PACKER).getDeclaredConstructor().newInstance();
+                logger.info("位平面提取使用向量化实现");
+                return packer;
+            } catch (ReflectiveOperationException | LinkageError | IllegalStateException e) {
+                logger.warn("向量化实现不可用，使用标量实现", e);
+            }
+        }
+        return (samples, offset, length, bits) -> packScalar(samples, offset, 0, length, bits);
+    }
+}
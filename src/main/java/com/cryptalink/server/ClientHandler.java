@@ -10,6 +10,8 @@ import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
 
 public class ClientHandler implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
@@ -71,29 +73,48 @@ public class ClientHandler implements Runnable {
     }
 
     private void handleFileUpload(BufferedReader in, PrintWriter out, String fileName) throws IOException {
+        long receiveStart = System.nanoTime();
         // 读取Base64编码的文件内容
         StringBuilder content = new StringBuilder();
         String line;
-        while (!(line = in.readLine()).equals("END_UPLOAD")) {
+        while ((line = in.readLine()) != null && !line.equals("END_UPLOAD")) {
+            if (line.equals("ABORT_UPLOAD")) {
+                // 客户端取消上传，丢弃已接收的内容
+                out.println("UPLOAD_ABORTED");
+                logger.info("客户端取消上传: {}", fileName);
+                return;
+            }
             content.append(line);
         }
+        if (line == null) {
+            // 连接在上传结束前断开，不保存不完整的文件
+            logger.warn("上传未完成，连接已断开: {}", fileName);
+            return;
+        }
 
         // 解码并保存文件
         byte[] decodedBytes = Base64.decodeBase64(content.toString());
         Path filePath = Paths.get(uploadDir, fileName);
         Files.write(filePath, decodedBytes);
+        long receiveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receiveStart);
 
-        // 如果是BMP文件，检测并提取LSB隐写信息
+        // 如果是BMP或PNG图像，检测并提取LSB隐写信息
         boolean hasSteg = false;
         String hiddenMessage = null;
-        if (fileName.toLowerCase().endsWith(".bmp")) {
-            hasSteg = LSBSteganography.hasSteg(filePath.toString());
-            if (hasSteg) {
-                hiddenMessage = "检测到隐写信息";
-            }
+        long scanMillis = 0;
+        byte[] contentHash = VerdictCache.newDigest().digest(decodedBytes);
+        if (ImageFormat.detect(decodedBytes) != null) {
+            // 直接检测内存中的数据，不再从磁盘读回
+            long scanStart = System.nanoTime();
+            StegVerdict verdict = VerdictCache.getInstance().detect(fileName, decodedBytes, contentHash);
+            hasSteg = verdict.hasSteganography();
+            hiddenMessage = verdict.hiddenMessage();
+            scanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scanStart);
         }
 
-        dbManager.saveFileInfo(fileName, hasSteg, hiddenMessage);
+        dbManager.saveFileInfo(new UploadRecord(fileName, hasSteg, hiddenMessage, decodedBytes.length,
+            HexFormat.of().formatHex(contentHash), String.valueOf(clientSocket.getRemoteSocketAddress()),
+            receiveMillis, scanMillis));
         
         if (hasSteg) {
             out.println("UPLOAD_SUCCESS:STEGANOGRAPHY");
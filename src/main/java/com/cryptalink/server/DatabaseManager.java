@@ -2,17 +2,79 @@ package com.cryptalink.server;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sqlite.SQLiteConfig;
 
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class DatabaseManager {
     private static final Logger logger = LoggerFactory.getLogger(DatabaseManager.class);
     private static final String DB_URL = "jdbc:sqlite:cryptalink.db";
+    private static final int WRITE_QUEUE_CAPACITY = 10_000; // 待写入的文件信息上限，队列满时调用方等待
+    private static final int MAX_WRITE_BATCH = 1000;        // 每个事务最多写入的记录数
+    private static final long WRITER_SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final int BUSY_TIMEOUT_MS = 5000;
+    /** 只读连接全部借出时最多等待的时间 */
+    private static final long READER_WAIT_MS = 30000;
+    // 只读连接数，查询可以按核数并行，上限避免打开过多文件句柄
+    private static final int READER_POOL_SIZE = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+    private static final int MAX_PAGE_SIZE = 1000;          // 分页查询每页最多返回的记录数
+    // 与 upload_time 默认值 datetime('now', 'localtime') 的格式一致，按字符串比较即按时间比较
+    private static final DateTimeFormatter UPLOAD_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // 最大的 Unicode 码点，UTF-8 编码后大于任何合法字符，用作前缀查询的上界
+    private static final String MAX_CODE_POINT = new String(Character.toChars(Character.MAX_CODE_POINT));
+    private static final String FILE_INFO_COLUMNS = "id, filename, upload_time, has_steganography, hidden_message, "
+        + "size, content_hash, client_id, receive_ms, scan_ms";
+    private static final double DURATION_QUANTILE = 0.99;
     private static DatabaseManager instance;
+    // 唯一的写连接，所有写操作在它上面串行执行
     private Connection connection;
+    // WAL 模式下读连接看到的是最近一次提交的快照，查询不会等待写事务，也不会阻塞写入
+    private final BlockingQueue<Connection> readers = new ArrayBlockingQueue<>(READER_POOL_SIZE);
+
+    // 文件信息由单独的写线程成组提交：上一批提交期间到达的记录合并为下一批，在一个事务中写入
+    private final BlockingQueue<PendingFileInfo> writeQueue = new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY);
+    private final Thread writerThread;
+    private volatile boolean closing;
+    private volatile boolean incrementalVacuumEnabled;
+    // 只读连接池已打开；初始化失败或关闭后为 false，查询立即失败而不是等待
+    private volatile boolean readersOpen;
+
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ReadAction<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    private record PendingFileInfo(UploadRecord upload, LocalDateTime uploadTime, CompletableFuture<Void> committed) {
+    }
+
+    private record RollupKey(IngestStats.Period period, String bucketStart) {
+    }
 
     private DatabaseManager() {
         initializeDatabase();
+        writerThread = new Thread(this::runWriter, "db-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -25,8 +87,17 @@ public class DatabaseManager {
     private void initializeDatabase() {
         try {
             connection = DriverManager.getConnection(DB_URL);
+            // WAL 模式下提交只追加日志，读操作不会阻塞写入
+            try (Statement stmt = connection.createStatement()) {
+                // 增量回收只能在建表前开启，删除记录后空闲页由保留任务分小步归还，不需要锁库的 VACUUM
+                stmt.execute("PRAGMA auto_vacuum=INCREMENTAL");
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MS);
+            }
             createTables();
-            logger.info("数据库初始化成功");
+            checkAutoVacuum();
+            openReaders();
+            logger.info("数据库初始化成功，只读连接 {} 个", readers.size());
         } catch (SQLException e) {
             logger.error("数据库初始化失败: ", e);
         }
@@ -39,40 +110,842 @@ public class DatabaseManager {
                 filename TEXT NOT NULL,
                 upload_time TEXT DEFAULT (datetime('now', 'localtime')),
                 has_steganography BOOLEAN DEFAULT FALSE,
-                hidden_message TEXT
+                hidden_message TEXT,
+                size INTEGER,
+                content_hash TEXT,
+                client_id TEXT,
+                receive_ms INTEGER,
+                scan_ms INTEGER
+            )
+        """;
+
+        // 批量扫描按文件名回写结果，需要文件名索引
+        String createFilenameIndex = "CREATE INDEX IF NOT EXISTS idx_file_info_filename ON file_info (filename)";
+
+        // 分页查询按 (upload_time, id) 和 (has_steganography, upload_time, id) 定位，索引末尾隐含 rowid 即 id
+        String createUploadTimeIndex = "CREATE INDEX IF NOT EXISTS idx_file_info_upload_time ON file_info (upload_time)";
+        String createStegTimeIndex = "CREATE INDEX IF NOT EXISTS idx_file_info_steg_time ON file_info (has_steganography, upload_time)";
+
+        // 批量扫描的断点记录，用于中断后继续
+        String createScanProgressTable = """
+            CREATE TABLE IF NOT EXISTS scan_progress (
+                filename TEXT PRIMARY KEY,
+                scanned_time TEXT DEFAULT (datetime('now', 'localtime'))
+            )
+        """;
+
+        // 按内容哈希缓存的隐写检测结果，detector_version 变化后旧结果不再使用
+        String createVerdictTable = """
+            CREATE TABLE IF NOT EXISTS steg_verdict (
+                content_hash TEXT PRIMARY KEY,
+                detector_version INTEGER NOT NULL,
+                has_steganography BOOLEAN DEFAULT FALSE,
+                hidden_message TEXT,
+                created_time TEXT DEFAULT (datetime('now', 'localtime'))
+            )
+        """;
+
+        // 按小时、按天累计的上传统计，写入文件信息时在同一事务中更新，看板直接读取，不再扫描 file_info
+        String createRollupTable = """
+            CREATE TABLE IF NOT EXISTS ingest_rollup (
+                period TEXT NOT NULL,
+                bucket_start TEXT NOT NULL,
+                file_count INTEGER NOT NULL DEFAULT 0,
+                total_bytes INTEGER NOT NULL DEFAULT 0,
+                steg_hits INTEGER NOT NULL DEFAULT 0,
+                PRIMARY KEY (period, bucket_start)
+            )
+        """;
+
+        // 每个统计周期的处理耗时直方图，区间划分见 DurationHistogram
+        String createHistogramTable = """
+            CREATE TABLE IF NOT EXISTS ingest_duration_histogram (
+                period TEXT NOT NULL,
+                bucket_start TEXT NOT NULL,
+                bin INTEGER NOT NULL,
+                sample_count INTEGER NOT NULL DEFAULT 0,
+                PRIMARY KEY (period, bucket_start, bin)
             )
         """;
 
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createFileInfoTable);
+            migrateFileInfo(stmt);
+            stmt.execute(createFilenameIndex);
+            stmt.execute(createUploadTimeIndex);
+            stmt.execute(createStegTimeIndex);
+            stmt.execute(createScanProgressTable);
+            stmt.execute(createVerdictTable);
+            boolean rollupExists = tableExists(stmt, "ingest_rollup");
+            stmt.execute(createRollupTable);
+            stmt.execute(createHistogramTable);
+            if (!rollupExists) {
+                backfillRollup(stmt);
+            }
         }
     }
 
-    public void saveFileInfo(String filename, boolean hasSteganography, String hiddenMessage) {
-        String sql = "INSERT INTO file_info (filename, has_steganography, hidden_message) VALUES (?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, filename);
-            pstmt.setBoolean(2, hasSteganography);
-            pstmt.setString(3, hiddenMessage);
-            pstmt.executeUpdate();
-            logger.info("文件信息已保存到数据库: {}", filename);
+    /**
+     * 旧版本创建的 file_info 缺少元数据列，逐列补齐，已有记录的新列为 NULL
+     */
+    private void migrateFileInfo(Statement stmt) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(file_info)")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name"));
+            }
+        }
+        Map<String, String> added = new LinkedHashMap<>();
+        added.put("size", "INTEGER");
+        added.put("content_hash", "TEXT");
+        added.put("client_id", "TEXT");
+        added.put("receive_ms", "INTEGER");
+        added.put("scan_ms", "INTEGER");
+        for (Map.Entry<String, String> column : added.entrySet()) {
+            if (!columns.contains(column.getKey())) {
+                stmt.execute("ALTER TABLE file_info ADD COLUMN " + column.getKey() + " " + column.getValue());
+                logger.info("file_info 表已添加列: {}", column.getKey());
+            }
+        }
+    }
+
+    private static boolean tableExists(Statement stmt, String table) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = '" + table + "'")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * 首次创建统计表时按已有记录补齐文件数、字节数和隐写数，已有记录没有耗时，不计入直方图
+     */
+    private void backfillRollup(Statement stmt) throws SQLException {
+        String hourly = """
+            INSERT INTO ingest_rollup (period, bucket_start, file_count, total_bytes, steg_hits)
+            SELECT 'HOUR', substr(upload_time, 1, 13) || ':00:00', COUNT(*), COALESCE(SUM(size), 0), SUM(has_steganography)
+            FROM file_info GROUP BY 2
+        """;
+        String daily = """
+            INSERT INTO ingest_rollup (period, bucket_start, file_count, total_bytes, steg_hits)
+            SELECT 'DAY', substr(upload_time, 1, 10) || ' 00:00:00', COUNT(*), COALESCE(SUM(size), 0), SUM(has_steganography)
+            FROM file_info GROUP BY 2
+        """;
+        int buckets = stmt.executeUpdate(hourly) + stmt.executeUpdate(daily);
+        logger.info("已按现有文件信息生成 {} 条上传统计", buckets);
+    }
+
+    private void checkAutoVacuum() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+            incrementalVacuumEnabled = rs.next() && rs.getInt(1) == 2;
+            if (!incrementalVacuumEnabled) {
+                logger.warn("数据库创建时未开启增量回收，删除记录后文件不会缩小，需要在停机时执行一次 VACUUM 后生效");
+            }
+        }
+    }
+
+    /**
+     * 建表之后再打开只读连接，只读连接无法创建数据库文件
+     */
+    private void openReaders() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        for (int i = 0; i < READER_POOL_SIZE; i++) {
+            readers.add(DriverManager.getConnection(DB_URL, config.toProperties()));
+        }
+        readersOpen = true;
+    }
+
+    /**
+     * 借出一个只读连接执行查询，结束后归还。连接全部借出时等待其他查询结束，最多等待 {@value #READER_WAIT_MS} 毫秒
+     * @throws SQLException 数据库未成功初始化、已关闭或等待超时
+     */
+    private <T> T read(ReadAction<T> action) throws SQLException {
+        if (!readersOpen) {
+            throw new SQLException("数据库只读连接不可用");
+        }
+        Connection reader;
+        try {
+            reader = readers.poll(READER_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待数据库连接时被中断", e);
+        }
+        if (reader == null) {
+            throw new SQLException("等待数据库连接超时");
+        }
+        try {
+            return action.apply(reader);
+        } finally {
+            if (readersOpen) {
+                readers.add(reader);
+            } else {
+                // 借出期间数据库已关闭
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * 异步保存文件信息，记录进入写队列后立即返回，由写线程与其他记录一起成组提交，并累加到上传统计中
+     * @return 记录所在事务提交后完成的 future，需要确认已持久化的调用方可以等待它，写入失败时异常完成
+     */
+    public CompletableFuture<Void> saveFileInfo(UploadRecord upload) {
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        if (closing) {
+            committed.completeExceptionally(new IllegalStateException("数据库已关闭"));
+            return committed;
+        }
+        try {
+            // 上传时间在入队时确定，文件信息和统计使用同一个时间
+            writeQueue.put(new PendingFileInfo(upload, LocalDateTime.now(), committed));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            committed.completeExceptionally(e);
+        }
+        return committed;
+    }
+
+    private void runWriter() {
+        List<PendingFileInfo> batch = new ArrayList<>(MAX_WRITE_BATCH);
+        while (!closing || !writeQueue.isEmpty()) {
+            try {
+                PendingFileInfo first = writeQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writeQueue.drainTo(batch, MAX_WRITE_BATCH - 1);
+                writeFileInfoBatch(batch);
+            } catch (InterruptedException e) {
+                // 关闭时仍要写完队列中的记录
+                Thread.interrupted();
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private synchronized void writeFileInfoBatch(List<PendingFileInfo> batch) {
+        try {
+            if (connection == null) {
+                throw new SQLException("数据库未初始化");
+            }
+            connection.setAutoCommit(false);
+            try {
+                insertFileInfo(batch);
+                updateRollup(batch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            logger.debug("已批量保存 {} 条文件信息", batch.size());
+            for (PendingFileInfo info : batch) {
+                info.committed().complete(null);
+            }
         } catch (SQLException e) {
             logger.error("保存文件信息失败: ", e);
+            for (PendingFileInfo info : batch) {
+                info.committed().completeExceptionally(e);
+            }
         }
     }
 
-    public ResultSet queryFileInfo(String filename) {
-        String sql = "SELECT * FROM file_info WHERE filename = ?";
+    /**
+     * 在调用方的事务中插入文件信息，之后需要调用 {@link #updateRollup} 累加到上传统计
+     */
+    private void insertFileInfo(List<PendingFileInfo> batch) throws SQLException {
+        String sql = "INSERT INTO file_info (filename, upload_time, has_steganography, hidden_message, "
+            + "size, content_hash, client_id, receive_ms, scan_ms) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, filename);
-            return pstmt.executeQuery();
+            for (PendingFileInfo info : batch) {
+                UploadRecord upload = info.upload();
+                pstmt.setString(1, upload.filename());
+                pstmt.setString(2, info.uploadTime().format(UPLOAD_TIME_FORMAT));
+                pstmt.setBoolean(3, upload.hasSteganography());
+                pstmt.setString(4, upload.hiddenMessage());
+                pstmt.setLong(5, upload.size());
+                pstmt.setString(6, upload.contentHash());
+                pstmt.setString(7, upload.clientId());
+                pstmt.setLong(8, upload.receiveMillis());
+                pstmt.setLong(9, upload.scanMillis());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * 先在内存中按统计周期合并本批记录，每个周期只更新一次统计行和用到的直方图区间
+     */
+    private void updateRollup(List<PendingFileInfo> batch) throws SQLException {
+        Map<RollupKey, long[]> totals = new HashMap<>();
+        Map<RollupKey, long[]> histograms = new HashMap<>();
+        for (PendingFileInfo info : batch) {
+            UploadRecord upload = info.upload();
+            int bin = DurationHistogram.bin(upload.receiveMillis() + upload.scanMillis());
+            for (IngestStats.Period period : IngestStats.Period.values()) {
+                RollupKey key = new RollupKey(period, period.bucketOf(info.uploadTime()).format(UPLOAD_TIME_FORMAT));
+                long[] total = totals.computeIfAbsent(key, k -> new long[3]);
+                total[0]++;
+                total[1] += upload.size();
+                total[2] += upload.hasSteganography() ? 1 : 0;
+                histograms.computeIfAbsent(key, k -> new long[DurationHistogram.binCount()])[bin]++;
+            }
+        }
+        applyRollup(totals, histograms);
+    }
+
+    /**
+     * 把按周期合并好的文件数、字节数、隐写数和直方图计数累加到统计表
+     * @param totals 每个周期的 {文件数, 字节数, 隐写数} 增量，可以为负
+     * @param histograms 每个周期各直方图区间的样本数增量，没有样本的周期可以不出现
+     */
+    private void applyRollup(Map<RollupKey, long[]> totals, Map<RollupKey, long[]> histograms) throws SQLException {
+        String rollupSql = """
+            INSERT INTO ingest_rollup (period, bucket_start, file_count, total_bytes, steg_hits) VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (period, bucket_start) DO UPDATE SET
+                file_count = file_count + excluded.file_count,
+                total_bytes = total_bytes + excluded.total_bytes,
+                steg_hits = steg_hits + excluded.steg_hits
+        """;
+        String histogramSql = """
+            INSERT INTO ingest_duration_histogram (period, bucket_start, bin, sample_count) VALUES (?, ?, ?, ?)
+            ON CONFLICT (period, bucket_start, bin) DO UPDATE SET sample_count = sample_count + excluded.sample_count
+        """;
+        try (PreparedStatement rollup = connection.prepareStatement(rollupSql);
+             PreparedStatement histogram = connection.prepareStatement(histogramSql)) {
+            for (Map.Entry<RollupKey, long[]> entry : totals.entrySet()) {
+                RollupKey key = entry.getKey();
+                long[] total = entry.getValue();
+                rollup.setString(1, key.period().name());
+                rollup.setString(2, key.bucketStart());
+                rollup.setLong(3, total[0]);
+                rollup.setLong(4, total[1]);
+                rollup.setLong(5, total[2]);
+                rollup.addBatch();
+
+                long[] counts = histograms.getOrDefault(key, new long[0]);
+                for (int bin = 0; bin < counts.length; bin++) {
+                    if (counts[bin] > 0) {
+                        histogram.setString(1, key.period().name());
+                        histogram.setString(2, key.bucketStart());
+                        histogram.setInt(3, bin);
+                        histogram.setLong(4, counts[bin]);
+                        histogram.addBatch();
+                    }
+                }
+            }
+            rollup.executeBatch();
+            histogram.executeBatch();
+        }
+    }
+
+    /**
+     * 读取时间范围内各统计周期的上传汇总，每个周期只读取一行统计和有限个直方图区间，与文件数无关
+     * @param from 起始时间（含），按所在周期的起始时间比较
+     * @param to 结束时间（不含）
+     * @return 按周期起始时间排列的统计，没有上传的周期不返回；查询失败时返回 null
+     */
+    public List<IngestStats> loadIngestStats(IngestStats.Period period, LocalDateTime from, LocalDateTime to) {
+        String rollupSql = "SELECT bucket_start, file_count, total_bytes, steg_hits FROM ingest_rollup "
+            + "WHERE period = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start";
+        String histogramSql = "SELECT bucket_start, bin, sample_count FROM ingest_duration_histogram "
+            + "WHERE period = ? AND bucket_start >= ? AND bucket_start < ?";
+        StatementBinder range = pstmt -> {
+            pstmt.setString(1, period.name());
+            pstmt.setString(2, period.bucketOf(from).format(UPLOAD_TIME_FORMAT));
+            pstmt.setString(3, to.format(UPLOAD_TIME_FORMAT));
+        };
+        try {
+            return read(reader -> {
+                Map<String, long[]> totals = new LinkedHashMap<>();
+                Map<String, long[]> histograms = new HashMap<>();
+                // 两次查询放在同一个读事务中，统计行和直方图来自同一个快照
+                reader.setAutoCommit(false);
+                try {
+                    try (PreparedStatement pstmt = reader.prepareStatement(rollupSql)) {
+                        range.bind(pstmt);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                totals.put(rs.getString(1), new long[]{rs.getLong(2), rs.getLong(3), rs.getLong(4)});
+                            }
+                        }
+                    }
+                    try (PreparedStatement pstmt = reader.prepareStatement(histogramSql)) {
+                        range.bind(pstmt);
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                histograms.computeIfAbsent(rs.getString(1), k -> new long[DurationHistogram.binCount()])
+                                    [rs.getInt(2)] += rs.getLong(3);
+                            }
+                        }
+                    }
+                    reader.commit();
+                } finally {
+                    reader.setAutoCommit(true);
+                }
+
+                List<IngestStats> stats = new ArrayList<>(totals.size());
+                for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+                    long[] total = entry.getValue();
+                    long[] counts = histograms.get(entry.getKey());
+                    long p99 = counts == null ? 0 : DurationHistogram.quantile(counts, DURATION_QUANTILE);
+                    stats.add(new IngestStats(entry.getKey(), total[0], total[1], total[2], p99));
+                }
+                return stats;
+            });
         } catch (SQLException e) {
-            logger.error("查询文件信息失败: ", e);
+            logger.error("读取上传统计失败: ", e);
             return null;
         }
     }
 
+    /**
+     * 在一个事务中批量写回扫描结果，并记录扫描断点，上传统计在同一事务中保持一致。
+     * 已有记录按文件名更新，检测结果改变时调整记录所在统计周期的隐写数；
+     * 没有记录的文件按扫描时间插入新记录，与上传一样累加到统计和耗时直方图。
+     */
+    public synchronized void saveScanVerdicts(List<UploadRecord> results) {
+        String changedSql = "SELECT upload_time FROM file_info WHERE filename = ? AND COALESCE(has_steganography, 0) != ?";
+        String updateSql = "UPDATE file_info SET has_steganography = ?, hidden_message = ? WHERE filename = ?";
+        String progressSql = "INSERT OR REPLACE INTO scan_progress (filename) VALUES (?)";
+        LocalDateTime scanTime = LocalDateTime.now();
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement changed = connection.prepareStatement(changedSql);
+                 PreparedStatement update = connection.prepareStatement(updateSql);
+                 PreparedStatement progress = connection.prepareStatement(progressSql)) {
+                Map<RollupKey, long[]> stegDeltas = new HashMap<>();
+                // 同一批中同名文件只插入一条，以最后一个结果为准
+                Map<String, PendingFileInfo> inserted = new LinkedHashMap<>();
+                for (UploadRecord result : results) {
+                    // 逐条更新，同一批中同名文件的下一次查询能看到这次的结果，隐写数不会重复调整
+                    changed.setString(1, result.filename());
+                    changed.setBoolean(2, result.hasSteganography());
+                    try (ResultSet rs = changed.executeQuery()) {
+                        while (rs.next()) {
+                            addStegDelta(stegDeltas, rs.getString(1), result.hasSteganography() ? 1 : -1);
+                        }
+                    }
+                    update.setBoolean(1, result.hasSteganography());
+                    update.setString(2, result.hiddenMessage());
+                    update.setString(3, result.filename());
+                    if (update.executeUpdate() == 0) {
+                        inserted.put(result.filename(), new PendingFileInfo(result, scanTime, new CompletableFuture<>()));
+                    }
+                    progress.setString(1, result.filename());
+                    progress.addBatch();
+                }
+                List<PendingFileInfo> newFiles = new ArrayList<>(inserted.values());
+                insertFileInfo(newFiles);
+                updateRollup(newFiles);
+                applyRollup(stegDeltas, Map.of());
+                progress.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            logger.debug("已批量保存 {} 条扫描结果", results.size());
+        } catch (SQLException e) {
+            logger.error("批量保存扫描结果失败: ", e);
+        }
+    }
+
+    /**
+     * 把一条记录隐写数的变化计入它所在的每个统计周期
+     */
+    private static void addStegDelta(Map<RollupKey, long[]> deltas, String uploadTime, int delta) {
+        LocalDateTime time = null;
+        try {
+            time = uploadTime == null ? null : LocalDateTime.parse(uploadTime, UPLOAD_TIME_FORMAT);
+        } catch (DateTimeParseException e) {
+            // 下面按缺少上传时间处理
+        }
+        if (time == null) {
+            logger.warn("无法解析上传时间，统计中的隐写数未调整: {}", uploadTime);
+            return;
+        }
+        for (IngestStats.Period period : IngestStats.Period.values()) {
+            RollupKey key = new RollupKey(period, period.bucketOf(time).format(UPLOAD_TIME_FORMAT));
+            deltas.computeIfAbsent(key, k -> new long[3])[2] += delta;
+        }
+    }
+
+    public Set<String> loadScanProgress() {
+        try {
+            return read(reader -> {
+                Set<String> filenames = new HashSet<>();
+                try (Statement stmt = reader.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT filename FROM scan_progress")) {
+                    while (rs.next()) {
+                        filenames.add(rs.getString(1));
+                    }
+                }
+                return filenames;
+            });
+        } catch (SQLException e) {
+            logger.error("读取扫描断点失败: ", e);
+            return new HashSet<>();
+        }
+    }
+
+    public synchronized void clearScanProgress() {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM scan_progress");
+        } catch (SQLException e) {
+            logger.error("清除扫描断点失败: ", e);
+        }
+    }
+
+    /**
+     * 按内容哈希读取缓存的检测结果
+     * @return 检测结果（文件名为空），未缓存或检测器版本不一致时返回 null
+     */
+    public StegVerdict loadVerdict(String contentHash) {
+        String sql = "SELECT has_steganography, hidden_message FROM steg_verdict WHERE content_hash = ? AND detector_version = ?";
+        try {
+            return read(reader -> {
+                try (PreparedStatement pstmt = reader.prepareStatement(sql)) {
+                    pstmt.setString(1, contentHash);
+                    pstmt.setInt(2, StegAnalyzer.DETECTOR_VERSION);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        return rs.next() ? new StegVerdict(null, rs.getBoolean(1), rs.getString(2)) : null;
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("读取检测结果缓存失败: ", e);
+            return null;
+        }
+    }
+
+    public synchronized void saveVerdict(String contentHash, StegVerdict verdict) {
+        String sql = "INSERT OR REPLACE INTO steg_verdict (content_hash, detector_version, has_steganography, hidden_message) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, contentHash);
+            pstmt.setInt(2, StegAnalyzer.DETECTOR_VERSION);
+            pstmt.setBoolean(3, verdict.hasSteganography());
+            pstmt.setString(4, verdict.hiddenMessage());
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("保存检测结果缓存失败: ", e);
+        }
+    }
+
+    /**
+     * 按文件名查询文件信息
+     * @return 按记录编号排列的全部记录，查询失败时返回 null
+     */
+    public List<FileInfo> queryFileInfo(String filename) {
+        List<FileInfo> result = new ArrayList<>();
+        return forEachFileInfo(filename, result::add) ? result : null;
+    }
+
+    /**
+     * 按文件名逐条读取文件信息，不在内存中保留整个结果集。
+     * 回调在借出的只读连接上执行，应尽快返回，不要在回调中再次访问数据库
+     * @return 查询成功返回 true
+     */
+    public boolean forEachFileInfo(String filename, Consumer<FileInfo> action) {
+        String sql = "SELECT " + FILE_INFO_COLUMNS + " FROM file_info WHERE filename = ? ORDER BY id";
+        return streamFileInfo(sql, pstmt -> pstmt.setString(1, filename), action) >= 0;
+    }
+
+    /**
+     * 按上传时间从新到旧分页读取文件信息。
+     * 分页按键定位：下一页从上一页最后一条记录之后开始，翻到多深都只需在索引上查找一次，不使用 OFFSET
+     * @param after 上一页的最后一条记录，读取第一页时为 null
+     * @param limit 本页最多返回的记录数，超过 1000 条时按 1000 条处理
+     * @param action 逐条接收记录的回调，在借出的只读连接上执行
+     * @return 本页返回的记录数，小于 limit 说明已经没有更多记录；查询失败时返回 -1
+     */
+    public int recentUploads(FileInfo after, int limit, Consumer<FileInfo> action) {
+        String sql = "SELECT " + FILE_INFO_COLUMNS + " FROM file_info"
+            + (after == null ? "" : " WHERE (upload_time, id) < (?, ?)")
+            + " ORDER BY upload_time DESC, id DESC LIMIT ?";
+        return streamFileInfo(sql, pstmt -> {
+            int index = 1;
+            if (after != null) {
+                pstmt.setString(index++, after.uploadTime());
+                pstmt.setLong(index++, after.id());
+            }
+            pstmt.setInt(index, pageSize(limit));
+        }, action);
+    }
+
+    /**
+     * 按记录编号顺序分页读取 (afterId, upToId] 范围内的文件信息，用于加载完整的文件目录
+     * @return 本页返回的记录数，查询失败时返回 -1
+     */
+    public int fileInfoAfter(long afterId, long upToId, int limit, Consumer<FileInfo> action) {
+        String sql = "SELECT " + FILE_INFO_COLUMNS + " FROM file_info WHERE id > ? AND id <= ? ORDER BY id LIMIT ?";
+        return streamFileInfo(sql, pstmt -> {
+            pstmt.setLong(1, afterId);
+            pstmt.setLong(2, upToId);
+            pstmt.setInt(3, pageSize(limit));
+        }, action);
+    }
+
+    /**
+     * @return 当前最大的记录编号，没有记录时返回 0，查询失败时返回 -1
+     */
+    public long maxFileInfoId() {
+        try {
+            return read(reader -> {
+                try (Statement stmt = reader.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM file_info")) {
+                    return rs.next() ? rs.getLong(1) : 0L;
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("查询文件信息失败: ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * 按文件名前缀分页查询，结果按文件名排序，参数含义同 {@link #recentUploads(FileInfo, int, Consumer)}
+     * @param prefix 文件名前缀，区分大小写
+     */
+    public int searchByFilenamePrefix(String prefix, FileInfo after, int limit, Consumer<FileInfo> action) {
+        // 用范围条件代替 LIKE，才能使用文件名索引，也不必转义通配符
+        String sql = "SELECT " + FILE_INFO_COLUMNS + " FROM file_info WHERE filename >= ? AND filename < ?"
+            + (after == null ? "" : " AND (filename, id) > (?, ?)")
+            + " ORDER BY filename, id LIMIT ?";
+        return streamFileInfo(sql, pstmt -> {
+            int index = 1;
+            pstmt.setString(index++, prefix);
+            pstmt.setString(index++, prefix + MAX_CODE_POINT);
+            if (after != null) {
+                pstmt.setString(index++, after.filename());
+                pstmt.setLong(index++, after.id());
+            }
+            pstmt.setInt(index, pageSize(limit));
+        }, action);
+    }
+
+    /**
+     * 分页查询时间范围内检测到隐写的文件，从新到旧排列，参数含义同 {@link #recentUploads(FileInfo, int, Consumer)}
+     * @param from 起始时间（含）
+     * @param to 结束时间（不含）
+     */
+    public int stegPositiveBetween(LocalDateTime from, LocalDateTime to, FileInfo after, int limit,
+                                   Consumer<FileInfo> action) {
+        String sql = "SELECT " + FILE_INFO_COLUMNS + " FROM file_info"
+            + " WHERE has_steganography = 1 AND upload_time >= ? AND upload_time < ?"
+            + (after == null ? "" : " AND (upload_time, id) < (?, ?)")
+            + " ORDER BY upload_time DESC, id DESC LIMIT ?";
+        return streamFileInfo(sql, pstmt -> {
+            int index = 1;
+            pstmt.setString(index++, from.format(UPLOAD_TIME_FORMAT));
+            pstmt.setString(index++, to.format(UPLOAD_TIME_FORMAT));
+            if (after != null) {
+                pstmt.setString(index++, after.uploadTime());
+                pstmt.setLong(index++, after.id());
+            }
+            pstmt.setInt(index, pageSize(limit));
+        }, action);
+    }
+
+    /**
+     * 按上传时间从旧到新读取一批文件信息，供保留任务选择要删除的记录
+     * @param hasSteganography 只读取检测结果与之相同的记录
+     * @param before 只读取此时间之前上传的记录，null 表示不限
+     * @return 最多 limit 条记录，查询失败时返回 null
+     */
+    public List<FileInfo> oldestFileInfo(boolean hasSteganography, LocalDateTime before, int limit) {
+        String sql = "SELECT " + FILE_INFO_COLUMNS + " FROM file_info WHERE has_steganography = ?"
+            + (before == null ? "" : " AND upload_time < ?")
+            + " ORDER BY upload_time, id LIMIT ?";
+        List<FileInfo> result = new ArrayList<>();
+        int count = streamFileInfo(sql, pstmt -> {
+            int index = 1;
+            pstmt.setBoolean(index++, hasSteganography);
+            if (before != null) {
+                pstmt.setString(index++, before.format(UPLOAD_TIME_FORMAT));
+            }
+            pstmt.setInt(index, pageSize(limit));
+        }, result::add);
+        return count >= 0 ? result : null;
+    }
+
+    /**
+     * 同名文件重新上传后磁盘上只有最新的一份，删除记录前用它判断文件是否仍被其他记录引用
+     * @return 该文件名的记录数，查询失败时返回 -1
+     */
+    public int countFileInfo(String filename) {
+        String sql = "SELECT COUNT(*) FROM file_info WHERE filename = ?";
+        try {
+            return read(reader -> {
+                try (PreparedStatement pstmt = reader.prepareStatement(sql)) {
+                    pstmt.setString(1, filename);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        return rs.next() ? rs.getInt(1) : 0;
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("查询文件信息失败: ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * @return 记录的文件总字节数，升级前写入的记录没有大小，不计入；查询失败时返回 -1
+     */
+    public long totalFileBytes(boolean hasSteganography) {
+        String sql = "SELECT COALESCE(SUM(size), 0) FROM file_info WHERE has_steganography = ?";
+        try {
+            return read(reader -> {
+                try (PreparedStatement pstmt = reader.prepareStatement(sql)) {
+                    pstmt.setBoolean(1, hasSteganography);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        return rs.next() ? rs.getLong(1) : 0L;
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("统计文件大小失败: ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * 在一个事务中按编号删除文件信息，批次应保持较小，避免长时间占用写连接
+     * @return 删除的记录数，失败时返回 -1
+     */
+    public synchronized int deleteFileInfo(List<Long> ids) {
+        String sql = "DELETE FROM file_info WHERE id = ?";
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                for (long id : ids) {
+                    pstmt.setLong(1, id);
+                    pstmt.addBatch();
+                }
+                int deleted = 0;
+                for (int count : pstmt.executeBatch()) {
+                    deleted += Math.max(0, count);
+                }
+                connection.commit();
+                return deleted;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("删除文件信息失败: ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * @return 数据库开启了增量回收（auto_vacuum=INCREMENTAL）时返回 true，否则 incremental_vacuum 不会归还任何页
+     */
+    public boolean isIncrementalVacuumEnabled() {
+        return incrementalVacuumEnabled;
+    }
+
+    /**
+     * 归还最多 pages 个空闲页，每次只占用写连接很短的时间
+     * @return 剩余的空闲页数，失败时返回 -1
+     */
+    public synchronized long incrementalVacuum(int pages) {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.executeUpdate("PRAGMA incremental_vacuum(" + pages + ")");
+            try (ResultSet rs = stmt.executeQuery("PRAGMA freelist_count")) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            logger.error("增量回收失败: ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * 把 WAL 中已提交的内容写回数据库文件，不等待正在进行的读写
+     */
+    public synchronized void checkpoint() {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA wal_checkpoint(PASSIVE)");
+        } catch (SQLException e) {
+            logger.error("WAL 检查点失败: ", e);
+        }
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(0, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * @return 交给回调的记录数，查询失败时返回 -1
+     */
+    private int streamFileInfo(String sql, StatementBinder binder, Consumer<FileInfo> action) {
+        try {
+            return read(reader -> {
+                int count = 0;
+                try (PreparedStatement pstmt = reader.prepareStatement(sql)) {
+                    binder.bind(pstmt);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            action.accept(new FileInfo(rs.getLong(1), rs.getString(2), rs.getString(3),
+                                rs.getBoolean(4), rs.getString(5), rs.getLong(6), rs.getString(7),
+                                rs.getString(8), rs.getLong(9), rs.getLong(10)));
+                            count++;
+                        }
+                    }
+                }
+                return count;
+            });
+        } catch (SQLException e) {
+            logger.error("查询文件信息失败: ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * 写完队列中剩余的文件信息后关闭数据库连接
+     */
     public void close() {
+        closing = true;
+        try {
+            writerThread.join(WRITER_SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warn("等待写入线程结束超时，仍有 {} 条文件信息未写入", writeQueue.size());
+        } else {
+            // 关闭过程中才入队的记录不会再被写入，通知等待的调用方
+            List<PendingFileInfo> abandoned = new ArrayList<>();
+            writeQueue.drainTo(abandoned);
+            for (PendingFileInfo info : abandoned) {
+                info.committed().completeExceptionally(new IllegalStateException("数据库已关闭"));
+            }
+        }
+        closeConnection();
+    }
+
+    private synchronized void closeConnection() {
+        readersOpen = false;
+        List<Connection> idle = new ArrayList<>();
+        readers.drainTo(idle);
+        for (Connection reader : idle) {
+            try {
+                reader.close();
+            } catch (SQLException e) {
+                logger.error("关闭只读连接失败: ", e);
+            }
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -0,0 +1,102 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 解码后图像的缓存，按文件路径、修改时间和大小识别同一份内容，按像素数据总字节数淘汰最久未使用的图像。
+ * 缓存中的图像由多次操作共享，调用方只能读取，需要修改时必须先复制。
+ */
+final class DecodedImageCache {
+    private static final Logger logger = LoggerFactory.getLogger(DecodedImageCache.class);
+
+    private final long maxWeight;
+    private final Map<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private record Entry(long modifiedTime, long size, BufferedImage image, long weight) {
+    }
+
+    DecodedImageCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * 读取图像，文件未变化时直接返回缓存的解码结果
+     * @return 解码后的图像，无法解码时返回 null
+     */
+    BufferedImage read(File file) throws IOException {
+        Path path = key(file);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long modifiedTime = attributes.lastModifiedTime().toMillis();
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.modifiedTime() == modifiedTime && entry.size() == attributes.size()) {
+                logger.debug("解码图像缓存命中: {}", path);
+                return entry.image();
+            }
+        }
+
+        BufferedImage image = ImageDecoder.read(file);
+        if (image != null) {
+            put(path, modifiedTime, attributes.size(), image);
+        }
+        return image;
+    }
+
+    /**
+     * 写回文件后用刚写入的图像替换缓存，避免修改时间精度不足时读到旧内容，也省去下一次解码
+     */
+    void update(File file, BufferedImage image) throws IOException {
+        Path path = key(file);
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        put(path, attributes.lastModifiedTime().toMillis(), attributes.size(), image);
+    }
+
+    synchronized void invalidate(File file) {
+        Entry removed = entries.remove(key(file));
+        if (removed != null) {
+            weight -= removed.weight();
+        }
+    }
+
+    private synchronized void put(Path path, long modifiedTime, long size, BufferedImage image) {
+        Entry previous = entries.remove(path);
+        if (previous != null) {
+            weight -= previous.weight();
+        }
+        long imageWeight = weightOf(image);
+        if (imageWeight > maxWeight) {
+            return;
+        }
+        entries.put(path, new Entry(modifiedTime, size, image, imageWeight));
+        weight += imageWeight;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().weight();
+            eldest.remove();
+        }
+    }
+
+    private static Path key(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /** 像素数据占用的字节数 */
+    private static long weightOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
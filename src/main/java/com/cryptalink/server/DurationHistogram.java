@@ -0,0 +1,65 @@
+package com.cryptalink.server;
+
+/**
+ * 耗时直方图的区间划分：4 毫秒以下每毫秒一个区间，之后每个 2 的幂范围再均分为 4 个区间，
+ * 区间宽度不超过下界的 1/4，分位数估算的相对误差在 25% 以内，而 0 到 Long.MAX_VALUE 只需要约 250 个区间。
+ * 区间固定，不同周期、不同批次的计数可以直接相加，按周期查询分位数时只需读取该周期的区间计数。
+ */
+final class DurationHistogram {
+    private static final int SUB_BINS = 4;
+    private static final int SUB_BITS = 2;
+
+    private DurationHistogram() {
+    }
+
+    /** 耗时所在的区间编号 */
+    static int bin(long millis) {
+        if (millis < SUB_BINS) {
+            return (int) Math.max(0, millis);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(millis);
+        int sub = (int) (millis >>> (exponent - SUB_BITS)) & (SUB_BINS - 1);
+        return SUB_BINS * (exponent - 1) + sub;
+    }
+
+    /** 区间内最大的耗时 */
+    static long upperBound(int bin) {
+        if (bin < SUB_BINS) {
+            return bin;
+        }
+        int exponent = bin / SUB_BINS + 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lower = (long) (SUB_BINS + bin % SUB_BINS) << (exponent - SUB_BITS);
+        return lower + width - 1;
+    }
+
+    /**
+     * 按区间计数估算分位数
+     * @param counts 下标为区间编号的计数
+     * @param quantile 分位（0~1）
+     * @return 分位数所在区间的上界，没有计数时返回 0
+     */
+    static long quantile(long[] counts, double quantile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int bin = 0; bin < counts.length; bin++) {
+            seen += counts[bin];
+            if (seen >= Math.max(1, rank)) {
+                return upperBound(bin);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /** 区间编号上限（不含） */
+    static int binCount() {
+        return bin(Long.MAX_VALUE) + 1;
+    }
+}
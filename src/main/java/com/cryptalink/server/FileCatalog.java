@@ -0,0 +1,94 @@
+package com.cryptalink.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 已上传文件的内存目录，按上传顺序保存每次上传的文件名和检测结果。
+ * 相同文件名只保存一份字符串，每个条目只占一个 int 名称编号和一位检测结果，百万条记录也只需几 MB（不含文件名本身）。
+ * 只在事件分发线程中访问，不做同步。
+ */
+final class FileCatalog {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int nameCount;
+    private int[] entryNames = new int[INITIAL_CAPACITY];
+    private long[] stegBits = new long[INITIAL_CAPACITY / 64];
+    private int size;
+
+    /**
+     * 追加一条上传记录
+     * @return 新条目的下标
+     */
+    int add(String filename, boolean hasSteganography) {
+        Integer nameId = nameIds.get(filename);
+        if (nameId == null) {
+            if (nameCount == names.length) {
+                names = Arrays.copyOf(names, nameCount * 2);
+            }
+            nameId = nameCount;
+            names[nameCount++] = filename;
+            nameIds.put(filename, nameId);
+        }
+        if (size == entryNames.length) {
+            entryNames = Arrays.copyOf(entryNames, size * 2);
+            stegBits = Arrays.copyOf(stegBits, entryNames.length / 64);
+        }
+        entryNames[size] = nameId;
+        if (hasSteganography) {
+            stegBits[size >>> 6] |= 1L << size;
+        }
+        return size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String filename(int index) {
+        return names[entryNames[index]];
+    }
+
+    boolean hasSteganography(int index) {
+        return (stegBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * 查找 [from, size) 中文件名以 prefix 开头的条目，每个不同的文件名只比较一次
+     * @return 匹配条目的下标，按上传顺序排列
+     */
+    int[] filter(String prefix, int from) {
+        long[] matchedNames = new long[(nameCount + 63) >>> 6];
+        for (int i = 0; i < nameCount; i++) {
+            if (names[i].startsWith(prefix)) {
+                matchedNames[i >>> 6] |= 1L << i;
+            }
+        }
+        int[] result = new int[Math.max(0, size - from)];
+        int count = 0;
+        for (int i = from; i < size; i++) {
+            int nameId = entryNames[i];
+            if ((matchedNames[nameId >>> 6] & (1L << nameId)) != 0) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 在上一次的匹配结果中继续过滤，用于在原有前缀后继续输入的情况
+     */
+    int[] refine(int[] candidates, int count, String prefix) {
+        int[] result = new int[count];
+        int matched = 0;
+        for (int i = 0; i < count; i++) {
+            if (filename(candidates[i]).startsWith(prefix)) {
+                result[matched++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(result, matched);
+    }
+}
@@ -0,0 +1,84 @@
+package com.cryptalink.server;
+
+import javax.swing.AbstractListModel;
+import java.util.Arrays;
+
+/**
+ * {@link FileCatalog} 的列表模型，只在列表绘制可见行时按下标取文件名，不复制目录内容。
+ * 设置前缀后只显示文件名以该前缀开头的条目，新增条目按当前前缀过滤后追加。
+ */
+final class FileCatalogListModel extends AbstractListModel<String> {
+    private static final String STEG_SUFFIX = "  [隐写]";
+
+    private final FileCatalog catalog;
+    private String prefix = "";
+    // 前缀为空时为 null，直接按目录下标显示
+    private int[] matches;
+    private int matchCount;
+
+    FileCatalogListModel(FileCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public int getSize() {
+        return matches == null ? catalog.size() : matchCount;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        int entry = matches == null ? index : matches[index];
+        String filename = catalog.filename(entry);
+        return catalog.hasSteganography(entry) ? filename + STEG_SUFFIX : filename;
+    }
+
+    /**
+     * 目录中从 from 开始追加了新条目后调用
+     */
+    void entriesAdded(int from) {
+        int to = catalog.size();
+        if (from >= to) {
+            return;
+        }
+        if (matches == null) {
+            fireIntervalAdded(this, from, to - 1);
+            return;
+        }
+        int[] added = catalog.filter(prefix, from);
+        if (added.length == 0) {
+            return;
+        }
+        if (matchCount + added.length > matches.length) {
+            matches = Arrays.copyOf(matches, Math.max(matches.length * 2, matchCount + added.length));
+        }
+        System.arraycopy(added, 0, matches, matchCount, added.length);
+        int first = matchCount;
+        matchCount += added.length;
+        fireIntervalAdded(this, first, matchCount - 1);
+    }
+
+    void setPrefix(String newPrefix) {
+        if (newPrefix.equals(prefix)) {
+            return;
+        }
+        int oldSize = getSize();
+        if (newPrefix.isEmpty()) {
+            matches = null;
+            matchCount = 0;
+        } else if (matches != null && newPrefix.startsWith(prefix)) {
+            matches = catalog.refine(matches, matchCount, newPrefix);
+            matchCount = matches.length;
+        } else {
+            matches = catalog.filter(newPrefix, 0);
+            matchCount = matches.length;
+        }
+        prefix = newPrefix;
+
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (getSize() > 0) {
+            fireIntervalAdded(this, 0, getSize() - 1);
+        }
+    }
+}
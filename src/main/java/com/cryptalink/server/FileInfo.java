@@ -0,0 +1,19 @@
+package com.cryptalink.server;
+
+/**
+ * file_info 表中的一条文件记录，查询结果在连接归还前已全部读出，可以在任意线程中使用。
+ * 升级前写入的记录没有大小、哈希、客户端和耗时信息，对应字段为 0 或 null
+ * @param id 记录编号
+ * @param filename 文件名（相对于上传目录）
+ * @param uploadTime 上传时间（本地时间，yyyy-MM-dd HH:mm:ss）
+ * @param hasSteganography 是否检测到隐写
+ * @param hiddenMessage 检测说明，未检测到时为 null
+ * @param size 文件大小（字节）
+ * @param contentHash 文件内容的 SHA-256 摘要（十六进制）
+ * @param clientId 上传文件的客户端标识
+ * @param receiveMillis 接收耗时（毫秒）
+ * @param scanMillis 隐写检测耗时（毫秒）
+ */
+public record FileInfo(long id, String filename, String uploadTime, boolean hasSteganography, String hiddenMessage,
+                       long size, String contentHash, String clientId, long receiveMillis, long scanMillis) {
+}
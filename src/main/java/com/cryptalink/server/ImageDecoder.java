@@ -0,0 +1,342 @@
+package com.cryptalink.server;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 按格式选择解码路径，常见格式不经过 ImageIO：
+ * 未压缩的24位BMP直接按行拷贝到 TYPE_3BYTE_BGR 的底层数组；
+ * 8位RGB/RGBA、非隔行的PNG（ImageIO 写出的格式）直接解压并反滤波到交错字节数组；
+ * 其余变体交给 ImageIO（跳过元数据解析）。
+ * 分配栅格之前先检查像素数，上限由系统属性 cryptalink.image.maxMegapixels 设置（百万像素，默认 100）；
+ * PNG 还要求压缩数据足以解出声明的尺寸，几十字节的文件不能让服务器分配上 GB 的内存。
+ */
+final class ImageDecoder {
+    private static final int BMP_HEADER_LENGTH = 54; // 文件头14字节 + BITMAPINFOHEADER 40字节
+    private static final int PNG_IHDR_END = 33;      // 签名8字节 + IHDR块25字节
+    private static final String MAX_MEGAPIXELS_PROPERTY = "cryptalink.image.maxMegapixels";
+    private static final int DEFAULT_MAX_MEGAPIXELS = 100;
+    private static final long MAX_PIXELS = Math.max(1, Integer.getInteger(MAX_MEGAPIXELS_PROPERTY, DEFAULT_MAX_MEGAPIXELS)) * 1_000_000L;
+    // deflate 的最大压缩比约为 1032:1
+    private static final long MAX_DEFLATE_RATIO = 1032;
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * 读取图像文件
+     * @return 解码后的图像，无法解码时返回 null（与 ImageIO.read 一致）
+     * @throws IOException 读取失败、数据损坏或尺寸超过上限
+     */
+    static BufferedImage read(File file) throws IOException {
+        if (ImageFormat.detect(file.toPath()) != null) {
+            return decode(Files.readAllBytes(file.toPath()));
+        }
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("无法读取文件: " + file);
+            }
+            return readWithImageIO(input, ImageIO.getImageReaders(input));
+        }
+    }
+
+    /**
+     * 解码内存中的图像数据
+     */
+    static BufferedImage decode(byte[] data) throws IOException {
+        ImageFormat format = ImageFormat.detect(data);
+        BufferedImage image = null;
+        if (format == ImageFormat.BMP) {
+            image = decodeBmp(data);
+        } else if (format == ImageFormat.PNG) {
+            image = decodePng(data);
+        }
+        if (image != null) {
+            return image;
+        }
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return readWithImageIO(input, format != null
+                ? ImageIO.getImageReadersByFormatName(format.formatName()) : ImageIO.getImageReaders(input));
+        }
+    }
+
+    /**
+     * 解码缓冲区中剩余的图像数据，不改变缓冲区的位置
+     */
+    static BufferedImage decode(ByteBuffer data) throws IOException {
+        if (data.hasArray() && data.arrayOffset() + data.position() == 0 && data.remaining() == data.array().length) {
+            return decode(data.array());
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return decode(copy);
+    }
+
+    /**
+     * 用第一个可用的 ImageIO 解码器读取，读取像素之前先从文件头检查尺寸
+     */
+    private static BufferedImage readWithImageIO(ImageInputStream input, Iterator<ImageReader> readers) throws IOException {
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            checkPixelCount(reader.getWidth(0), reader.getHeight(0));
+            return reader.read(0);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static void checkPixelCount(long width, long height) throws IOException {
+        if (width * height > MAX_PIXELS) {
+            throw new IOException("图像尺寸 " + width + "x" + height + " 超过上限 " + MAX_PIXELS / 1_000_000 + " 百万像素");
+        }
+    }
+
+    /**
+     * 直接解析未压缩的24位BMP，其余变体（调色板、RLE、16/32位等）返回 null 交给 ImageIO 处理
+     */
+    private static BufferedImage decodeBmp(byte[] data) throws IOException {
+        if (data.length < BMP_HEADER_LENGTH) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int pixelOffset = header.getInt(10);
+        int infoSize = header.getInt(14);
+        int width = header.getInt(18);
+        int height = header.getInt(22);
+        int bitCount = header.getShort(28) & 0xFFFF;
+        int compression = header.getInt(30);
+        if (infoSize < 40 || bitCount != 24 || compression != 0 || width <= 0 || height == 0
+                || height == Integer.MIN_VALUE || pixelOffset < BMP_HEADER_LENGTH) {
+            return null;
+        }
+
+        // 高度为负表示行从上到下存储，否则从下到上
+        boolean topDown = height < 0;
+        height = Math.abs(height);
+        checkPixelCount(width, height);
+        long rowBytes = (long) width * 3;
+        long stride = (rowBytes + 3) & ~3L;
+        if (pixelOffset + stride * (height - 1) + rowBytes > data.length || rowBytes * height > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        // BMP 的像素顺序为 B, G, R，与 TYPE_3BYTE_BGR 的底层数组一致，可以整行拷贝
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for (int row = 0; row < height; row++) {
+            int y = topDown ? row : height - 1 - row;
+            System.arraycopy(data, (int) (pixelOffset + row * stride), pixels, (int) (y * rowBytes), (int) rowBytes);
+        }
+        return image;
+    }
+
+    /**
+     * 直接解码8位RGB/RGBA、非隔行的PNG，其余变体（调色板、灰度、16位、隔行等）返回 null 交给 ImageIO 处理
+     */
+    private static BufferedImage decodePng(byte[] data) throws IOException {
+        if (data.length < PNG_IHDR_END) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt(8) != 13 || buffer.getInt(12) != chunkType("IHDR")) {
+            return null;
+        }
+        int width = buffer.getInt(16);
+        int height = buffer.getInt(20);
+        int bitDepth = data[24];
+        int colorType = data[25];
+        int interlace = data[28];
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        // 所有变体都先检查，交给 ImageIO 的变体同样会按声明的尺寸分配栅格
+        checkPixelCount(width, height);
+        checkIdatLength(data, width, height, bitDepth, colorType);
+        if (bitDepth != 8 || (colorType != 2 && colorType != 6) || interlace != 0) {
+            return null;
+        }
+
+        boolean alpha = colorType == 6;
+        int bytesPerPixel = alpha ? 4 : 3;
+        long stride = (long) width * bytesPerPixel;
+        if (stride * height > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        // 样本顺序与 PNG 相同（R, G, B[, A]），解压结果可以直接作为栅格数据
+        int[] bandOffsets = alpha ? new int[]{0, 1, 2, 3} : new int[]{0, 1, 2};
+        BufferedImage image = ImageTypeSpecifier.createInterleaved(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+            bandOffsets, DataBuffer.TYPE_BYTE, alpha, false).createBufferedImage(width, height);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        Inflater inflater = new Inflater();
+        try {
+            IdatReader idat = new IdatReader(data, inflater);
+            byte[] filter = new byte[1];
+            int rowBytes = (int) stride;
+            for (int y = 0; y < height; y++) {
+                int row = y * rowBytes;
+                if (!idat.inflateFully(filter, 0, 1) || !idat.inflateFully(pixels, row, rowBytes)) {
+                    return null;
+                }
+                unfilter(filter[0], pixels, row, y == 0 ? -1 : row - rowBytes, rowBytes, bytesPerPixel);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("PNG 数据解压失败", e);
+        } finally {
+            inflater.end();
+        }
+        return image;
+    }
+
+    /**
+     * 原地反滤波一行，previous 为 -1 表示第一行（上一行视为全 0）
+     */
+    private static void unfilter(int type, byte[] data, int row, int previous, int length, int bpp) throws IOException {
+        switch (type) {
+            case 0 -> {
+            }
+            case 1 -> {
+                for (int i = bpp; i < length; i++) {
+                    data[row + i] += data[row + i - bpp];
+                }
+            }
+            case 2 -> {
+                if (previous >= 0) {
+                    for (int i = 0; i < length; i++) {
+                        data[row + i] += data[previous + i];
+                    }
+                }
+            }
+            case 3 -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? data[row + i - bpp] & 0xFF : 0;
+                    int up = previous >= 0 ? data[previous + i] & 0xFF : 0;
+                    data[row + i] += (byte) ((left + up) >>> 1);
+                }
+            }
+            case 4 -> {
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? data[row + i - bpp] & 0xFF : 0;
+                    int up = previous >= 0 ? data[previous + i] & 0xFF : 0;
+                    int upLeft = i >= bpp && previous >= 0 ? data[previous + i - bpp] & 0xFF : 0;
+                    int estimate = left + up - upLeft;
+                    int distanceLeft = Math.abs(estimate - left);
+                    int distanceUp = Math.abs(estimate - up);
+                    int distanceUpLeft = Math.abs(estimate - upLeft);
+                    int predictor = distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft ? left
+                        : distanceUp <= distanceUpLeft ? up : upLeft;
+                    data[row + i] += (byte) predictor;
+                }
+            }
+            default -> throw new IOException("无效的PNG滤波类型: " + type);
+        }
+    }
+
+    /**
+     * 按最大压缩比检查 IDAT 数据能否解出声明尺寸所需的最少字节数（每行一个滤波字节加样本数据）
+     */
+    private static void checkIdatLength(byte[] data, int width, int height, int bitDepth, int colorType) throws IOException {
+        int channels = switch (colorType) {
+            case 2 -> 3;
+            case 4 -> 2;
+            case 6 -> 4;
+            default -> 1;
+        };
+        long minRawBytes = height * (1 + ((long) width * channels * bitDepth + 7) / 8);
+        long idatBytes = 0;
+        int position = 8; // 跳过签名
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (position + 8 <= data.length) {
+            int length = buffer.getInt(position);
+            int type = buffer.getInt(position + 4);
+            if (length < 0) {
+                break;
+            }
+            int start = position + 8;
+            if (type == chunkType("IDAT")) {
+                idatBytes += Math.min(length, data.length - start);
+            } else if (type == chunkType("IEND")) {
+                break;
+            }
+            position = (int) Math.min(data.length, start + (long) length + 4); // 跳过 CRC
+        }
+        if (idatBytes * MAX_DEFLATE_RATIO < minRawBytes) {
+            throw new IOException("PNG 数据不完整: " + width + "x" + height + " 的图像只有 " + idatBytes + " 字节压缩数据");
+        }
+    }
+
+    private static int chunkType(String type) {
+        return (type.charAt(0) << 24) | (type.charAt(1) << 16) | (type.charAt(2) << 8) | type.charAt(3);
+    }
+
+    /**
+     * 依次把各个 IDAT 块交给 Inflater，不拼接数据
+     */
+    private static final class IdatReader {
+        private final byte[] data;
+        private final ByteBuffer buffer;
+        private final Inflater inflater;
+        private int position = 8; // 跳过签名
+
+        IdatReader(byte[] data, Inflater inflater) {
+            this.data = data;
+            this.buffer = ByteBuffer.wrap(data);
+            this.inflater = inflater;
+        }
+
+        boolean inflateFully(byte[] output, int offset, int length) throws DataFormatException {
+            while (length > 0) {
+                int inflated = inflater.inflate(output, offset, length);
+                offset += inflated;
+                length -= inflated;
+                if (length > 0 && inflated == 0) {
+                    if (inflater.finished() || inflater.needsDictionary() || !nextIdat()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean nextIdat() {
+            while (position + 8 <= data.length) {
+                int length = buffer.getInt(position);
+                int type = buffer.getInt(position + 4);
+                int start = position + 8;
+                if (length < 0 || start + (long) length > data.length) {
+                    return false;
+                }
+                position = start + length + 4; // 跳过 CRC
+                if (type == chunkType("IDAT")) {
+                    inflater.setInput(data, start, length);
+                    return true;
+                }
+                if (type == chunkType("IEND")) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
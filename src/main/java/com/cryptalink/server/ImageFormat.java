@@ -0,0 +1,62 @@
+package com.cryptalink.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 隐写支持的无损图像格式，按文件开头的魔数识别，不依赖扩展名
+ */
+public enum ImageFormat {
+    BMP("bmp", new byte[]{'B', 'M'}),
+    PNG("png", new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+
+    /** 识别格式需要读取的字节数 */
+    public static final int MAGIC_LENGTH = 8;
+
+    private final String formatName;
+    private final byte[] magic;
+
+    ImageFormat(String formatName, byte[] magic) {
+        this.formatName = formatName;
+        this.magic = magic;
+    }
+
+    /**
+     * ImageIO 使用的格式名
+     */
+    public String formatName() {
+        return formatName;
+    }
+
+    /**
+     * 根据数据开头的魔数识别格式
+     * @return 识别出的格式，不支持的格式返回 null
+     */
+    public static ImageFormat detect(byte[] data, int offset, int length) {
+        for (ImageFormat format : values()) {
+            if (length >= format.magic.length) {
+                boolean match = true;
+                for (int i = 0; i < format.magic.length && match; i++) {
+                    match = data[offset + i] == format.magic[i];
+                }
+                if (match) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    public static ImageFormat detect(byte[] data) {
+        return detect(data, 0, data.length);
+    }
+
+    public static ImageFormat detect(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(MAGIC_LENGTH);
+            return detect(head);
+        }
+    }
+}
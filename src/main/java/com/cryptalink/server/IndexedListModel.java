@@ -0,0 +1,72 @@
+package com.cryptalink.server;
+
+import javax.swing.AbstractListModel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 元素不重复的列表模型，按元素维护下标，删除时用最后一个元素填补空位，增删都是 O(1)。
+ * 不保证显示顺序与添加顺序一致。只在事件分发线程中访问。
+ */
+final class IndexedListModel<E> extends AbstractListModel<E> {
+    private final List<E> items = new ArrayList<>();
+    private final Map<E, Integer> indexes = new HashMap<>();
+
+    @Override
+    public int getSize() {
+        return items.size();
+    }
+
+    @Override
+    public E getElementAt(int index) {
+        return items.get(index);
+    }
+
+    /**
+     * 批量追加，已存在的元素忽略，只通知一次
+     */
+    void addAll(Collection<? extends E> elements) {
+        int first = items.size();
+        for (E element : elements) {
+            if (!indexes.containsKey(element)) {
+                indexes.put(element, items.size());
+                items.add(element);
+            }
+        }
+        if (items.size() > first) {
+            fireIntervalAdded(this, first, items.size() - 1);
+        }
+    }
+
+    /**
+     * 批量删除，不存在的元素忽略
+     */
+    void removeAll(Collection<? extends E> elements) {
+        for (E element : elements) {
+            Integer index = indexes.remove(element);
+            if (index == null) {
+                continue;
+            }
+            int last = items.size() - 1;
+            E moved = items.remove(last);
+            if (index != last) {
+                items.set(index, moved);
+                indexes.put(moved, index);
+                fireContentsChanged(this, index, index);
+            }
+            fireIntervalRemoved(this, last, last);
+        }
+    }
+
+    void clear() {
+        int size = items.size();
+        items.clear();
+        indexes.clear();
+        if (size > 0) {
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.cryptalink.server;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 一个统计周期内的上传汇总，由写线程在写入文件信息的同一事务中累加
+ * @param bucketStart 周期起始时间（本地时间，yyyy-MM-dd HH:mm:ss）
+ * @param fileCount 上传文件数
+ * @param totalBytes 上传总字节数
+ * @param stegHits 检测到隐写的文件数
+ * @param p99Millis 单个文件处理耗时（接收 + 检测）的 99 分位，按直方图区间上界估算，没有耗时记录时为 0
+ */
+public record IngestStats(String bucketStart, long fileCount, long totalBytes, long stegHits, long p99Millis) {
+
+    /**
+     * 统计周期
+     */
+    public enum Period {
+        HOUR(ChronoUnit.HOURS),
+        DAY(ChronoUnit.DAYS);
+
+        private final ChronoUnit unit;
+
+        Period(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        /** 时间所在周期的起始时间 */
+        public LocalDateTime bucketOf(LocalDateTime time) {
+            return time.truncatedTo(unit);
+        }
+    }
+}
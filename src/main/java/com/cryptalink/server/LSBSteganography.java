@@ -5,11 +5,25 @@ import org.slf4j.LoggerFactory;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Random;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 import java.security.SecureRandom;
 import java.util.zip.CRC32;
 
@@ -20,6 +34,30 @@ public class LSBSteganography {
     private static final byte FRAME_START = (byte)0xAA;  // 帧起始标记
     private static final byte FRAME_END = (byte)0x55;    // 帧结束标记
     private static final long SERVER_SEED = 12345L; // 服务器固定种子
+    private static final String STEG_MARKER = "STEG_DETECTED"; // 服务器检测标记
+    private static final int MARKER_FRAME_LENGTH = STEG_MARKER.length() + 10; // 检测标记帧长度
+    private static final int LENGTH_MASK = 0x0FFFFFFF; // 文件头长度字段的低28位为帧长度
+    private static final int FLAG_TILED = 1 << 30;      // 文件头标志位：分段布局
+    private static final int BITS_SHIFT = 28;           // 文件头第28~29位为每个颜色分量使用的位数减1
+    private static final int BITS_FIELD = 3 << BITS_SHIFT;
+    /** 每个颜色分量最多使用的低位数 */
+    public static final int MAX_BITS_PER_CHANNEL = 4;
+    private static final int FRAME_OVERHEAD = 10;       // 起始标记(1) + 长度(4) + CRC32(4) + 结束标记(1)
+    private static final int BIT_PLANE_RATIO = 64;      // 消息位数超过图像样本数的 1/64 时整体提取最低位平面
+    private static final int PAYLOAD_WINDOW_BYTES = TiledLayout.SEGMENT_BYTES * 64; // 流式载荷每次处理的帧字节数
+    // 一次操作往往多次读取同一张图像（写入后验证、界面显示后提取），解码结果按像素字节数限量缓存
+    private static final DecodedImageCache IMAGE_CACHE =
+        new DecodedImageCache(Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4));
+
+    /**
+     * 消息位在图像中的布局方式
+     */
+    public enum Layout {
+        /** 原有格式：单一 Random 流逐位选择位置，只能顺序处理 */
+        SEQUENTIAL,
+        /** 分段格式：每段使用独立派生的随机流，可并行嵌入与提取，适合大载荷 */
+        TILED
+    }
 
     private static byte[] frameMessage(byte[] data) {
         // 计算CRC32校验和
@@ -63,7 +101,7 @@ public class LSBSteganography {
         long calculatedCrc = crc32.getValue();
         
         int receivedCrc = buffer.getInt();  // 读取4字节CRC32
-        if (receivedCrc != calculatedCrc) {
+        if (receivedCrc != (int) calculatedCrc) {
             logger.error("CRC32校验失败: 期望={}, 实际={}", calculatedCrc, receivedCrc);
             return null;
         }
@@ -77,38 +115,49 @@ public class LSBSteganography {
         return data;
     }
 
-    public static void hideMessage(String bmpFile, String message, long seed) {
+    public static void hideMessage(String imageFile, String message, long seed) {
+        hideMessage(imageFile, message, seed, Layout.SEQUENTIAL);
+    }
+
+    public static void hideMessage(String imageFile, String message, long seed, Layout layout) {
+        hideMessage(imageFile, message, seed, layout, 1);
+    }
+
+    /**
+     * 在无损图像（BMP 或 PNG，按文件内容识别）中写入消息，写回时保持原格式
+     * @param bitsPerChannel 每个颜色分量使用的低位数（1~4），大于1时只支持分段布局
+     */
+    public static void hideMessage(String imageFile, String message, long seed, Layout layout, int bitsPerChannel) {
+        if (!checkBitsPerChannel(layout, bitsPerChannel)) {
+            return;
+        }
         try {
             // 读取原始图像
-            File file = new File(bmpFile);
-            BufferedImage originalImage = ImageIO.read(file);
+            File file = new File(imageFile);
+            ImageFormat format = ImageFormat.detect(file.toPath());
+            if (format == null) {
+                logger.error("不支持的图像格式，仅支持无损的BMP和PNG");
+                return;
+            }
+            BufferedImage originalImage = IMAGE_CACHE.read(file);
             if (originalImage == null) {
-                logger.error("无法读取BMP文件");
+                logger.error("无法读取图像文件");
                 return;
             }
             
-            logger.info("开始处理图像 - 宽度: {}, 高度: {}, 类型: {}", 
-                originalImage.getWidth(), originalImage.getHeight(), originalImage.getType());
+            logger.info("开始处理图像 - 格式: {}, 宽度: {}, 高度: {}, 类型: {}, 布局: {}, 每通道位数: {}", 
+                format, originalImage.getWidth(), originalImage.getHeight(), originalImage.getType(), layout, bitsPerChannel);
 
             // 创建图像副本用于第一次写入
-            BufferedImage image1 = new BufferedImage(
-                originalImage.getWidth(),
-                originalImage.getHeight(),
-                BufferedImage.TYPE_INT_RGB
-            );
-            for (int x = 0; x < originalImage.getWidth(); x++) {
-                for (int y = 0; y < originalImage.getHeight(); y++) {
-                    image1.setRGB(x, y, originalImage.getRGB(x, y));
-                }
-            }
+            BufferedImage image1 = copyForEmbedding(originalImage, format);
 
             // 第一次写入：用户消息
-            hideMessageWithSeed(image1, message, seed);
-            ImageIO.write(image1, "bmp", file);
+            hideMessageWithSeed(image1, message, seed, layout, bitsPerChannel);
+            writeImage(image1, format, file);
             logger.info("第一次写入完成：用户消息");
 
             // 验证第一次写入
-            String userMessage = extractMessage(bmpFile, seed);
+            String userMessage = extractMessage(imageFile, seed);
             if (message.equals(userMessage)) {
                 logger.info("用户消息验证成功");
             } else {
@@ -116,35 +165,187 @@ public class LSBSteganography {
             }
 
             // 创建图像副本用于第二次写入
-            BufferedImage image2 = new BufferedImage(
-                originalImage.getWidth(),
-                originalImage.getHeight(),
-                BufferedImage.TYPE_INT_RGB
-            );
-            for (int x = 0; x < originalImage.getWidth(); x++) {
-                for (int y = 0; y < originalImage.getHeight(); y++) {
-                    image2.setRGB(x, y, image1.getRGB(x, y));
-                }
-            }
+            BufferedImage image2 = copyForEmbedding(image1, format);
 
-            // 第二次写入：检测标记
-            hideMessageWithSeed(image2, "STEG_DETECTED", SERVER_SEED);
-            ImageIO.write(image2, "bmp", file);
+            // 第二次写入：检测标记（不覆盖文件头，文件头保留用户消息的长度和布局）
+            writeDetectionMarker(image2);
+            writeImage(image2, format, file);
             logger.info("第二次写入完成：检测标记");
 
             // 验证写入
-            String testMessage = extractMessage(bmpFile, SERVER_SEED);
-            if ("STEG_DETECTED".equals(testMessage)) {
+            if (hasSteg(imageFile)) {
                 logger.info("验证成功：检测标记可以正确读取");
             } else {
-                logger.warn("验证失败：无法读取检测标记，读取到的内容: {}", testMessage);
+                logger.warn("验证失败：无法读取检测标记");
             }
         } catch (IOException e) {
             logger.error("隐写过程发生错误: ", e);
         }
     }
 
-    private static void hideMessageWithSeed(BufferedImage image, String message, long seed) throws IOException {
+    /**
+     * 把文件内容作为二进制载荷写入图像
+     * @see #hidePayload(String, ReadableByteChannel, long, long)
+     */
+    public static boolean hidePayload(String imageFile, Path payload, long seed) {
+        return hidePayload(imageFile, payload, seed, 1);
+    }
+
+    public static boolean hidePayload(String imageFile, Path payload, long seed, int bitsPerChannel) {
+        try (FileChannel source = FileChannel.open(payload, StandardOpenOption.READ)) {
+            return hidePayload(imageFile, source, source.size(), seed, bitsPerChannel);
+        } catch (IOException e) {
+            logger.error("读取载荷文件失败: ", e);
+            return false;
+        }
+    }
+
+    public static boolean hidePayload(String imageFile, InputStream source, long length, long seed) {
+        return hidePayload(imageFile, source, length, seed, 1);
+    }
+
+    public static boolean hidePayload(String imageFile, InputStream source, long length, long seed, int bitsPerChannel) {
+        return hidePayload(imageFile, Channels.newChannel(source), length, seed, bitsPerChannel);
+    }
+
+    public static boolean hidePayload(String imageFile, ReadableByteChannel source, long length, long seed) {
+        return hidePayload(imageFile, source, length, seed, 1);
+    }
+
+    /**
+     * 把长度已知的二进制载荷流式写入无损图像（BMP 或 PNG），写回时保持原格式。
+     * 载荷始终使用分段布局：先按图像尺寸检查容量，再按窗口从通道读取数据，边读边计算 CRC32 并并行嵌入，
+     * 除图像本身外只占用一个窗口的内存。帧格式与 {@link #hideMessage} 相同。
+     * @param length 载荷字节数，通道中必须至少有这么多数据
+     * @param bitsPerChannel 每个颜色分量使用的低位数（1~4）
+     * @return 是否写入成功；容量不足或数据提前结束时图像文件保持不变
+     */
+    public static boolean hidePayload(String imageFile, ReadableByteChannel source, long length, long seed,
+                                      int bitsPerChannel) {
+        if (!checkBitsPerChannel(Layout.TILED, bitsPerChannel)) {
+            return false;
+        }
+        try {
+            File file = new File(imageFile);
+            ImageFormat format = ImageFormat.detect(file.toPath());
+            if (format == null) {
+                logger.error("不支持的图像格式，仅支持无损的BMP和PNG");
+                return false;
+            }
+            BufferedImage originalImage = IMAGE_CACHE.read(file);
+            if (originalImage == null) {
+                logger.error("无法读取图像文件");
+                return false;
+            }
+
+            int width = originalImage.getWidth();
+            int height = originalImage.getHeight();
+            int[] reserved = reservedPositions(width, height);
+            long frameLength = length + FRAME_OVERHEAD;
+            if (length < 0 || frameLength > LENGTH_MASK
+                    || !TiledLayout.fits(width * height, (int) frameLength, bitsPerChannel, reserved)) {
+                logger.error("载荷太大，无法隐藏在图像中: {} 字节", length);
+                return false;
+            }
+            logger.info("开始写入载荷 - 格式: {}, 宽度: {}, 高度: {}, 载荷长度: {}, 每通道位数: {}",
+                format, width, height, length, bitsPerChannel);
+
+            BufferedImage image = copyForEmbedding(originalImage, format);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            TiledLayout layout = new TiledLayout(pixels.length, (int) frameLength, bitsPerChannel, seed, reserved);
+            FrameSource frame = new FrameSource(source, length);
+            byte[] window = new byte[(int) Math.min(PAYLOAD_WINDOW_BYTES, frameLength)];
+            for (int offset = 0; offset < frameLength; offset += window.length) {
+                int windowLength = (int) Math.min(window.length, frameLength - offset);
+                frame.fill(ByteBuffer.wrap(window, 0, windowLength));
+                layout.embed(pixels, window, offset / TiledLayout.SEGMENT_BYTES, windowLength);
+            }
+
+            // 文件头和检测标记所在位置都已保留，不会与载荷冲突，可以一次写回
+            writeHeader(image, tiledHeader((int) frameLength, bitsPerChannel));
+            writeDetectionMarker(image);
+            writeImage(image, format, file);
+            logger.info("载荷写入完成: {} 字节", length);
+
+            if (!hasSteg(image)) {
+                logger.warn("验证失败：无法读取检测标记");
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("写入载荷时发生错误: ", e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取并解码图像，文件未变化时复用之前的解码结果。
+     * 返回的图像与隐写操作共享，只能读取（例如显示），不能修改。
+     * @return 解码后的图像，无法读取时返回 null
+     */
+    public static BufferedImage readImage(String imageFile) {
+        try {
+            return IMAGE_CACHE.read(new File(imageFile));
+        } catch (IOException e) {
+            logger.error("读取图像失败: ", e);
+            return null;
+        }
+    }
+
+    /**
+     * 文件被删除后释放其解码缓存
+     */
+    static void invalidateCachedImage(File file) {
+        IMAGE_CACHE.invalidate(file);
+    }
+
+    /**
+     * 写回图像文件，并用写入的图像更新解码缓存
+     */
+    private static void writeImage(BufferedImage image, ImageFormat format, File file) throws IOException {
+        try {
+            ImageIO.write(image, format.formatName(), file);
+        } catch (IOException e) {
+            IMAGE_CACHE.invalidate(file);
+            throw e;
+        }
+        IMAGE_CACHE.update(file, image);
+    }
+
+    /**
+     * 复制为整数打包的图像；带透明通道的 PNG 保留 alpha，其余转换为 RGB
+     */
+    private static BufferedImage copyForEmbedding(BufferedImage source, ImageFormat format) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int type = format == ImageFormat.PNG && source.getColorModel().hasAlpha()
+            ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage copy = new BufferedImage(width, height, type);
+        copy.setRGB(0, 0, width, height, source.getRGB(0, 0, width, height, null, 0, width), 0, width);
+        return copy;
+    }
+
+    private static boolean checkBitsPerChannel(Layout layout, int bitsPerChannel) {
+        if (bitsPerChannel < 1 || bitsPerChannel > MAX_BITS_PER_CHANNEL) {
+            logger.error("无效的每通道位数: {}，应为 1~{}", bitsPerChannel, MAX_BITS_PER_CHANNEL);
+            return false;
+        }
+        // 原有格式的位置可能落在文件头像素上，只能使用最低位
+        if (layout != Layout.TILED && bitsPerChannel != 1) {
+            logger.error("每通道多位模式只支持分段布局");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 分段布局的文件头长度字段：帧长度、布局标志和每通道位数
+     */
+    private static int tiledHeader(int frameLength, int bitsPerChannel) {
+        return frameLength | FLAG_TILED | ((bitsPerChannel - 1) << BITS_SHIFT);
+    }
+
+    private static void hideMessageWithSeed(BufferedImage image, String message, long seed, Layout layout,
+                                            int bitsPerChannel) throws IOException {
         // 将消息转换为字节数组并添加帧结构
         byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
         byte[] framedMessage = frameMessage(messageBytes);
@@ -152,6 +353,21 @@ public class LSBSteganography {
         
         logger.debug("原始消息长度: {}, 帧化后长度: {}", messageBytes.length, messageLength);
 
+        if (layout == Layout.TILED) {
+            int[] reserved = reservedPositions(image.getWidth(), image.getHeight());
+            if (messageLength > LENGTH_MASK
+                    || !TiledLayout.fits(image.getWidth() * image.getHeight(), messageLength, bitsPerChannel, reserved)) {
+                logger.error("消息太长，无法隐藏在图像中");
+                return;
+            }
+
+            // 写入魔数和带布局标志的消息长度，文件头所在位置已被保留，不会被消息位覆盖
+            writeHeader(image, tiledHeader(messageLength, bitsPerChannel));
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            TiledLayout.embed(pixels, framedMessage, bitsPerChannel, seed, reserved);
+            return;
+        }
+
         // 检查图像容量是否足够
         int maxCapacity = (image.getWidth() * image.getHeight() * 3) / 8;
         if (messageLength > maxCapacity - HEADER_LENGTH) {
@@ -159,27 +375,26 @@ public class LSBSteganography {
             return;
         }
 
-        Random random = new Random(seed);
-        
         // 写入魔数和消息长度
         writeHeader(image, messageLength);
 
         // 使用伪随机数生成器分散存储消息位
-        int maxBits = (image.getWidth() * image.getHeight() * 3) - (HEADER_LENGTH * 8);
-        boolean[] usedBits = new boolean[maxBits];
-        
-        for (int byteIndex = 0; byteIndex < messageLength; byteIndex++) {
-            int currentByte = framedMessage[byteIndex] & 0xFF;  // 确保是无符号字节
+        embedSequential(image, framedMessage, seed);
+    }
+
+    private static void writeDetectionMarker(BufferedImage image) {
+        embedSequential(image, frameMessage(STEG_MARKER.getBytes(StandardCharsets.UTF_8)), SERVER_SEED);
+    }
+
+    private static void embedSequential(BufferedImage image, byte[] framedMessage, long seed) {
+        SequentialPositions positions = new SequentialPositions(image.getWidth(), image.getHeight(), seed);
+        for (byte b : framedMessage) {
+            int currentByte = b & 0xFF;  // 确保是无符号字节
             for (int bitIndex = 7; bitIndex >= 0; bitIndex--) {  // 从最高位开始
                 int bit = (currentByte >> bitIndex) & 1;
                 
                 // 找到一个未使用的随机位置
-                int position;
-                do {
-                    position = random.nextInt(maxBits);
-                } while (usedBits[position]);
-                
-                usedBits[position] = true;
+                int position = positions.next();
                 
                 // 计算像素位置和颜色分量
                 int pixelIndex = position / 3;
@@ -195,59 +410,30 @@ public class LSBSteganography {
         }
     }
 
-    public static String extractMessage(String bmpFile, long seed) {
+    public static String extractMessage(String imageFile, long seed) {
         try {
-            File file = new File(bmpFile);
-            BufferedImage image = ImageIO.read(file);
+            File file = new File(imageFile);
+            BufferedImage image = IMAGE_CACHE.read(file);
 
             if (image == null) {
-                logger.error("无法读取BMP文件");
+                logger.error("无法读取图像文件");
                 return null;
             }
 
-            // 验证魔数和获取消息长度
-            int[] headerInfo = readHeader(image);
-            if (headerInfo == null) {
-                logger.error("无效的文件格式或未找到隐写信息");
+            FrameHeader header = readFrameHeader(image);
+            if (header == null) {
                 return null;
             }
-            int messageLength = headerInfo[0];
-
-            // 验证消息长度
-            int maxCapacity = (image.getWidth() * image.getHeight() * 3) / 8;
-            if (messageLength <= 0 || messageLength > maxCapacity - HEADER_LENGTH) {
-                logger.error("无效的消息长度: {}", messageLength);
-                return null;
-            }
-
-            Random random = new Random(seed);
-            byte[] framedMessage = new byte[messageLength];
-            int maxBits = (image.getWidth() * image.getHeight() * 3) - (HEADER_LENGTH * 8);
-            boolean[] usedBits = new boolean[maxBits];
-
-            // 按照相同的随机顺序提取消息位
-            for (int byteIndex = 0; byteIndex < messageLength; byteIndex++) {
-                int currentByte = 0;
-                for (int bitIndex = 7; bitIndex >= 0; bitIndex--) {  // 从最高位开始
-                    int position;
-                    do {
-                        position = random.nextInt(maxBits);
-                    } while (usedBits[position]);
-                    
-                    usedBits[position] = true;
-                    
-                    int pixelIndex = position / 3;
-                    int x = pixelIndex % image.getWidth();
-                    int y = pixelIndex / image.getWidth();
-                    int component = position % 3;
-                    
-                    int pixel = image.getRGB(x, y);
-                    int bit = extractLSB(pixel, component);
-                    if (bit == 1) {
-                        currentByte |= (1 << bitIndex);  // 设置对应位
-                    }
-                }
-                framedMessage[byteIndex] = (byte)currentByte;
+            int messageLength = header.frameLength();
+
+            byte[] framedMessage;
+            if (header.tiled()) {
+                int width = image.getWidth();
+                int[] pixels = image.getRGB(0, 0, width, image.getHeight(), null, 0, width);
+                framedMessage = TiledLayout.extract(pixels, messageLength, header.bitsPerChannel(), seed,
+                    reservedPositions(width, image.getHeight()));
+            } else {
+                framedMessage = extractSequential(image, messageLength, seed);
             }
 
             // 解析帧并提取原始消息
@@ -270,9 +456,262 @@ public class LSBSteganography {
         }
     }
 
-    public static boolean hasSteg(String bmpFile) {
-        String message = extractMessage(bmpFile, SERVER_SEED);
-        return message != null && message.equals("STEG_DETECTED");
+    /**
+     * 文件头中的帧长度、布局和每通道位数
+     */
+    private record FrameHeader(int frameLength, boolean tiled, int bitsPerChannel) {
+    }
+
+    /**
+     * 读取并校验文件头，帧长度超出图像容量时视为无效
+     * @return 文件头信息，未找到隐写信息或文件头无效时返回 null
+     */
+    private static FrameHeader readFrameHeader(BufferedImage image) {
+        // 验证魔数和获取消息长度
+        int[] headerInfo = readHeader(image);
+        if (headerInfo == null) {
+            logger.error("无效的文件格式或未找到隐写信息");
+            return null;
+        }
+        int flags = headerInfo[0] & ~LENGTH_MASK;
+        int messageLength = headerInfo[0] & LENGTH_MASK;
+        boolean tiled = (flags & FLAG_TILED) != 0;
+        int bitsPerChannel = ((flags & BITS_FIELD) >>> BITS_SHIFT) + 1;
+        if ((flags & ~(FLAG_TILED | BITS_FIELD)) != 0 || (!tiled && bitsPerChannel != 1)) {
+            logger.error("未知的文件头标志: {}", Integer.toHexString(flags));
+            return null;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean valid;
+        if (tiled) {
+            valid = messageLength > 0
+                && TiledLayout.fits(width * height, messageLength, bitsPerChannel, reservedPositions(width, height));
+        } else {
+            // 验证消息长度
+            int maxCapacity = (width * height * 3) / 8;
+            valid = messageLength > 0 && messageLength <= maxCapacity - HEADER_LENGTH;
+        }
+        if (!valid) {
+            logger.error("无效的消息长度: {}", messageLength);
+            return null;
+        }
+        return new FrameHeader(messageLength, tiled, bitsPerChannel);
+    }
+
+    private static byte[] extractSequential(BufferedImage image, int messageLength, long seed) {
+        int width = image.getWidth();
+        SequentialPositions positions = new SequentialPositions(width, image.getHeight(), seed);
+        byte[] framedMessage = new byte[messageLength];
+
+        // 消息位数相对图像较多时，先一次性提取整个最低位平面，之后每一位只需查位图；
+        // 短消息（如检测标记）逐位读取像素更快
+        IntUnaryOperator lsb;
+        if ((long) messageLength * 8 * BIT_PLANE_RATIO >= (long) width * image.getHeight() * 3) {
+            lsb = BitPlane.of(image)::get;
+        } else {
+            lsb = position -> {
+                int pixelIndex = position / 3;
+                int pixel = image.getRGB(pixelIndex % width, pixelIndex / width);
+                return extractLSB(pixel, position % 3);
+            };
+        }
+
+        // 按照相同的随机顺序提取消息位
+        for (int byteIndex = 0; byteIndex < messageLength; byteIndex++) {
+            int currentByte = 0;
+            for (int bitIndex = 7; bitIndex >= 0; bitIndex--) {  // 从最高位开始
+                int bit = lsb.applyAsInt(positions.next());
+                if (bit == 1) {
+                    currentByte |= (1 << bitIndex);  // 设置对应位
+                }
+            }
+            framedMessage[byteIndex] = (byte)currentByte;
+        }
+        return framedMessage;
+    }
+
+    /**
+     * 把提取出的载荷写入文件。载荷先写入同一目录下的临时文件，校验通过后才替换目标文件，
+     * 种子错误或校验失败时已有的目标文件保持不变
+     * @see #extractPayload(String, long, WritableByteChannel)
+     */
+    public static long extractPayload(String imageFile, long seed, Path target) {
+        Path temp;
+        try {
+            temp = Files.createTempFile(target.toAbsolutePath().getParent(), ".extract-", ".tmp");
+        } catch (IOException e) {
+            logger.error("创建临时文件失败: ", e);
+            return -1;
+        }
+        long length;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                length = extractPayload(imageFile, seed, channel);
+            }
+            if (length >= 0) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            logger.error("写入载荷文件失败: ", e);
+            length = -1;
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.warn("删除临时文件失败: {}", temp, e);
+            }
+        }
+        return length;
+    }
+
+    public static long extractPayload(String imageFile, long seed, OutputStream target) {
+        return extractPayload(imageFile, seed, Channels.newChannel(target));
+    }
+
+    /**
+     * 从图像中提取二进制载荷并流式写入通道。分段布局按窗口提取，边写边计算 CRC32；
+     * 原有顺序布局的帧（通常是短消息）整体提取后再写出。
+     * 由于数据先于校验和写出，返回 -1 时通道中可能已有部分无效数据，调用方应丢弃。
+     * @return 载荷字节数，未找到载荷、种子错误或校验失败时返回 -1
+     */
+    public static long extractPayload(String imageFile, long seed, WritableByteChannel target) {
+        try {
+            BufferedImage image = IMAGE_CACHE.read(new File(imageFile));
+            if (image == null) {
+                logger.error("无法读取图像文件");
+                return -1;
+            }
+            FrameHeader header = readFrameHeader(image);
+            if (header == null) {
+                return -1;
+            }
+
+            if (!header.tiled()) {
+                byte[] data = unframeMessage(extractSequential(image, header.frameLength(), seed));
+                if (data == null) {
+                    logger.error("载荷帧解析失败");
+                    return -1;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                return data.length;
+            }
+
+            int frameLength = header.frameLength();
+            if (frameLength < FRAME_OVERHEAD) {
+                logger.error("无效的消息长度: {}", frameLength);
+                return -1;
+            }
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            TiledLayout layout = new TiledLayout(pixels.length, frameLength, header.bitsPerChannel(), seed,
+                reservedPositions(width, height));
+            FrameSink frame = new FrameSink(target, frameLength - FRAME_OVERHEAD);
+            byte[] window = new byte[Math.min(PAYLOAD_WINDOW_BYTES, frameLength)];
+            for (int offset = 0; offset < frameLength; offset += window.length) {
+                int windowLength = Math.min(window.length, frameLength - offset);
+                layout.extract(pixels, window, offset / TiledLayout.SEGMENT_BYTES, windowLength);
+                frame.accept(ByteBuffer.wrap(window, 0, windowLength));
+            }
+            frame.verify();
+            logger.debug("成功提取载荷，帧长度: {}", frameLength);
+            return frameLength - FRAME_OVERHEAD;
+        } catch (IOException e) {
+            logger.error("提取载荷时发生错误: ", e);
+            return -1;
+        } catch (Exception e) {
+            logger.error("隐写检测过程中发生未知错误: ", e);
+            return -1;
+        }
+    }
+
+    public static boolean hasSteg(String imageFile) {
+        try {
+            BufferedImage image = IMAGE_CACHE.read(new File(imageFile));
+            return image != null && hasSteg(image);
+        } catch (Exception e) {
+            logger.error("隐写检测过程中发生错误: ", e);
+            return false;
+        }
+    }
+
+    /**
+     * 检测内存中的图像数据（如刚接收的上传内容），不经过磁盘
+     */
+    public static boolean hasSteg(byte[] imageData) {
+        try {
+            BufferedImage image = ImageDecoder.decode(imageData);
+            return image != null && hasSteg(image);
+        } catch (Exception e) {
+            logger.error("隐写检测过程中发生错误: ", e);
+            return false;
+        }
+    }
+
+    /**
+     * 检测缓冲区中剩余的图像数据，不改变缓冲区的位置
+     */
+    public static boolean hasSteg(ByteBuffer imageData) {
+        try {
+            BufferedImage image = ImageDecoder.decode(imageData);
+            return image != null && hasSteg(image);
+        } catch (Exception e) {
+            logger.error("隐写检测过程中发生错误: ", e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取整个输入流并检测，不关闭输入流
+     */
+    public static boolean hasSteg(InputStream imageData) {
+        try {
+            return hasSteg(imageData.readAllBytes());
+        } catch (IOException e) {
+            logger.error("读取图像数据失败: ", e);
+            return false;
+        }
+    }
+
+    static boolean hasSteg(BufferedImage image) {
+        try {
+            if (readHeader(image) == null) {
+                return false;
+            }
+            // 检测标记总是以原有格式写在 SERVER_SEED 序列的最前面，长度固定，与文件头中的用户消息长度无关
+            int maxBits = (image.getWidth() * image.getHeight() * 3) - (HEADER_LENGTH * 8);
+            if (maxBits < MARKER_FRAME_LENGTH * 8) {
+                return false;
+            }
+            byte[] marker = unframeMessage(extractSequential(image, MARKER_FRAME_LENGTH, SERVER_SEED));
+            return marker != null && STEG_MARKER.equals(new String(marker, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            logger.error("隐写检测过程中发生错误: ", e);
+            return false;
+        }
+    }
+
+    /**
+     * 分段布局中不能使用的位置：文件头所在像素，以及检测标记在 SERVER_SEED 序列中占用的位置
+     */
+    private static int[] reservedPositions(int width, int height) {
+        IntStream.Builder positions = IntStream.builder();
+        // 魔数所在像素 (0, 0)，以及长度字段所在像素
+        for (int i = -16; i < 32; i++) {
+            int x = (i + 16) / 24;
+            int y = ((i + 16) % 24) / 3;
+            positions.add((y * width + x) * 3 + (i + 16) % 3);
+        }
+        SequentialPositions markerPositions = new SequentialPositions(width, height, SERVER_SEED);
+        for (int i = 0; i < MARKER_FRAME_LENGTH * 8; i++) {
+            positions.add(markerPositions.next());
+        }
+        return positions.build().distinct().sorted().toArray();
     }
 
     private static void writeHeader(BufferedImage image, int messageLength) {
@@ -360,7 +799,8 @@ public class LSBSteganography {
         // 修改指定颜色分量的最低位
         rgb[component] = (rgb[component] & 0xfe) | (bit & 1);
 
-        return (rgb[0] << 16) | (rgb[1] << 8) | rgb[2];
+        // 保留 alpha 通道，带透明度的 PNG 写回时不会丢失
+        return (pixel & 0xff000000) | (rgb[0] << 16) | (rgb[1] << 8) | rgb[2];
     }
 
     private static int extractLSB(int pixel, int component) {
@@ -372,6 +812,152 @@ public class LSBSteganography {
         return rgb[component] & 1;
     }
 
+    /**
+     * 原有格式的位置序列：单一 Random 流，跳过已使用的位置
+     */
+    private static final class SequentialPositions {
+        private final Random random;
+        private final int maxBits;
+        private final boolean[] usedBits;
+
+        SequentialPositions(int width, int height, long seed) {
+            this.random = new Random(seed);
+            this.maxBits = (width * height * 3) - (HEADER_LENGTH * 8);
+            this.usedBits = new boolean[maxBits];
+        }
+
+        int next() {
+            int position;
+            do {
+                position = random.nextInt(maxBits);
+            } while (usedBits[position]);
+            usedBits[position] = true;
+            return position;
+        }
+    }
+
+    /**
+     * 按顺序生成载荷帧：起始标记、长度、从通道读取的数据、CRC32、结束标记
+     */
+    private static final class FrameSource {
+        private final ReadableByteChannel channel;
+        private final CRC32 crc32 = new CRC32();
+        private final ByteBuffer header = ByteBuffer.allocate(5);
+        private final ByteBuffer trailer = ByteBuffer.allocate(5);
+        private long dataRemaining;
+
+        FrameSource(ReadableByteChannel channel, long dataLength) {
+            this.channel = channel;
+            this.dataRemaining = dataLength;
+            header.put(FRAME_START).putInt((int) dataLength).flip();
+            if (dataLength == 0) {
+                finishData();
+            }
+        }
+
+        /**
+         * 填满目标缓冲区
+         */
+        void fill(ByteBuffer target) throws IOException {
+            while (target.hasRemaining()) {
+                if (header.hasRemaining()) {
+                    transfer(header, target);
+                } else if (dataRemaining > 0) {
+                    int start = target.position();
+                    int limit = target.limit();
+                    target.limit((int) Math.min(limit, start + dataRemaining));
+                    int read = channel.read(target);
+                    target.limit(limit);
+                    if (read < 0) {
+                        throw new EOFException("载荷数据提前结束，还缺少 " + dataRemaining + " 字节");
+                    }
+                    crc32.update(target.array(), target.arrayOffset() + start, read);
+                    dataRemaining -= read;
+                    if (dataRemaining == 0) {
+                        finishData();
+                    }
+                } else {
+                    transfer(trailer, target);
+                }
+            }
+        }
+
+        private void finishData() {
+            trailer.putInt((int) crc32.getValue()).put(FRAME_END).flip();
+        }
+    }
+
+    /**
+     * 按顺序解析载荷帧：校验起始标记和长度，把数据写入通道，最后校验 CRC32 和结束标记
+     */
+    private static final class FrameSink {
+        private final WritableByteChannel channel;
+        private final long dataLength;
+        private final CRC32 crc32 = new CRC32();
+        private final ByteBuffer header = ByteBuffer.allocate(5);
+        private final ByteBuffer trailer = ByteBuffer.allocate(5);
+        private long dataRemaining;
+
+        FrameSink(WritableByteChannel channel, long dataLength) {
+            this.channel = channel;
+            this.dataLength = dataLength;
+            this.dataRemaining = dataLength;
+        }
+
+        void accept(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                if (header.hasRemaining()) {
+                    transfer(source, header);
+                    if (!header.hasRemaining()) {
+                        checkHeader();
+                    }
+                } else if (dataRemaining > 0) {
+                    ByteBuffer data = source.slice();
+                    data.limit((int) Math.min(data.remaining(), dataRemaining));
+                    source.position(source.position() + data.remaining());
+                    dataRemaining -= data.remaining();
+                    crc32.update(data.duplicate());
+                    while (data.hasRemaining()) {
+                        channel.write(data);
+                    }
+                } else {
+                    transfer(source, trailer);
+                }
+            }
+        }
+
+        void verify() throws IOException {
+            if (header.hasRemaining() || dataRemaining > 0 || trailer.hasRemaining()) {
+                throw new EOFException("载荷帧不完整");
+            }
+            trailer.flip();
+            int receivedCrc = trailer.getInt();
+            if (receivedCrc != (int) crc32.getValue()) {
+                throw new IOException("CRC32校验失败: 期望=" + crc32.getValue() + ", 实际=" + receivedCrc);
+            }
+            if (trailer.get() != FRAME_END) {
+                throw new IOException("无效的帧结束标记");
+            }
+        }
+
+        private void checkHeader() throws IOException {
+            header.flip();
+            if (header.get() != FRAME_START) {
+                throw new IOException("无效的帧起始标记");
+            }
+            int length = header.getInt();
+            if (length != dataLength) {
+                throw new IOException("无效的数据长度: " + length);
+            }
+        }
+    }
+
+    private static void transfer(ByteBuffer source, ByteBuffer target) {
+        while (source.hasRemaining() && target.hasRemaining()) {
+            target.put(source.get());
+        }
+    }
+
     public static long generateRandomSeed() {
         return new SecureRandom().nextLong();
     }
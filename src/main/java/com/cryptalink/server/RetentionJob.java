@@ -0,0 +1,227 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 {@link RetentionPolicy} 定期清理上传目录和数据库的后台任务，运行在最低优先级的单独线程上。
+ * 每批只删除少量文件和记录，批次之间让出写连接，之后再分小步归还数据库空闲页，清理期间上传不会被长时间阻塞。
+ */
+public class RetentionJob {
+    private static final Logger logger = LoggerFactory.getLogger(RetentionJob.class);
+    private static final int DELETE_BATCH_SIZE = 200;
+    private static final int VACUUM_PAGES_PER_STEP = 256;
+    /** 每次清理最多归还的步数，剩余的空闲页留到下一次清理 */
+    private static final int MAX_VACUUM_STEPS = 400;
+    private static final long PAUSE_BETWEEN_BATCHES_MS = 50;
+
+    private final Path uploadsDir;
+    private final RetentionPolicy policy;
+    private final DatabaseManager dbManager;
+    private ScheduledExecutorService scheduler;
+    private volatile boolean stopping;
+
+    public RetentionJob(Path uploadsDir, RetentionPolicy policy) {
+        this.uploadsDir = uploadsDir.toAbsolutePath().normalize();
+        this.policy = policy;
+        this.dbManager = DatabaseManager.getInstance();
+    }
+
+    public synchronized void start() {
+        if (scheduler != null || !policy.isEnabled()) {
+            return;
+        }
+        stopping = false;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retention");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        long interval = policy.interval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::runSafely, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("保留任务已启动: {}", policy);
+    }
+
+    /**
+     * 停止定期清理，正在进行的清理在当前批次结束后退出
+     */
+    public synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        stopping = true;
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scheduler.shutdownNow();
+        }
+        scheduler = null;
+    }
+
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (RuntimeException e) {
+            logger.error("保留任务执行失败", e);
+        }
+    }
+
+    /**
+     * 执行一次清理
+     * @return 删除的记录数
+     */
+    public int runOnce() {
+        LocalDateTime now = LocalDateTime.now();
+        int deleted = 0;
+        if (policy.maxAge() != null) {
+            deleted += deleteOlderThan(false, now.minus(policy.maxAge()));
+        }
+        if (policy.stegMaxAge() != null) {
+            deleted += deleteOlderThan(true, now.minus(policy.stegMaxAge()));
+        }
+        if (policy.maxTotalBytes() > 0) {
+            deleted += deleteOverSize();
+        }
+        if (deleted > 0) {
+            logger.info("保留任务删除了 {} 条文件记录", deleted);
+            reclaimSpace();
+        }
+        return deleted;
+    }
+
+    private int deleteOlderThan(boolean hasSteganography, LocalDateTime cutoff) {
+        int deleted = 0;
+        while (!stopping) {
+            List<FileInfo> batch = dbManager.oldestFileInfo(hasSteganography, cutoff, DELETE_BATCH_SIZE);
+            int count = batch == null ? -1 : deleteBatch(batch);
+            if (count <= 0) {
+                break;
+            }
+            deleted += count;
+            pause();
+        }
+        return deleted;
+    }
+
+    /** 从最早的文件开始删除未检测到隐写的文件，直到总大小不超过上限 */
+    private int deleteOverSize() {
+        long total = dbManager.totalFileBytes(false);
+        int deleted = 0;
+        while (!stopping && total > policy.maxTotalBytes()) {
+            List<FileInfo> candidates = dbManager.oldestFileInfo(false, null, DELETE_BATCH_SIZE);
+            if (candidates == null) {
+                break;
+            }
+            // 只取刚好使总大小回到上限以内的部分
+            List<FileInfo> batch = new ArrayList<>();
+            long excess = total - policy.maxTotalBytes();
+            for (FileInfo info : candidates) {
+                if (excess <= 0) {
+                    break;
+                }
+                batch.add(info);
+                excess -= info.size();
+            }
+            int count = deleteBatch(batch);
+            if (count <= 0) {
+                break;
+            }
+            deleted += count;
+            total = dbManager.totalFileBytes(false);
+            pause();
+        }
+        return deleted;
+    }
+
+    /**
+     * 先删除文件，再在一个事务中删除对应记录。文件删除失败的记录保留，下次清理时重试
+     * @return 删除的记录数
+     */
+    private int deleteBatch(List<FileInfo> batch) {
+        // 同一文件名可能有多条记录，只有全部记录都在本批中时磁盘上的文件才不再被引用
+        Map<String, List<Long>> byFilename = new LinkedHashMap<>();
+        for (FileInfo info : batch) {
+            byFilename.computeIfAbsent(info.filename(), k -> new ArrayList<>()).add(info.id());
+        }
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (Map.Entry<String, List<Long>> entry : byFilename.entrySet()) {
+            if (deleteFile(entry.getKey(), entry.getValue().size())) {
+                ids.addAll(entry.getValue());
+            }
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return dbManager.deleteFileInfo(ids);
+    }
+
+    /**
+     * @param deletingRecords 本批中该文件名的记录数
+     * @return 记录可以删除时返回 true
+     */
+    private boolean deleteFile(String filename, int deletingRecords) {
+        Path file = uploadsDir.resolve(filename).normalize();
+        if (!file.startsWith(uploadsDir)) {
+            logger.warn("文件名超出上传目录，只删除记录: {}", filename);
+            return true;
+        }
+        int records = dbManager.countFileInfo(filename);
+        if (records < 0 || records > deletingRecords) {
+            // 磁盘上的文件仍被其他记录引用，或无法确认，只删除记录
+            return true;
+        }
+        try {
+            Files.deleteIfExists(file);
+            LSBSteganography.invalidateCachedImage(file.toFile());
+            return true;
+        } catch (IOException e) {
+            logger.warn("删除文件失败: {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * 分小步归还空闲页，每步之间写线程可以提交新的上传记录。
+     * 数据库未开启增量回收时 incremental_vacuum 不起作用，直接跳过；某一步没有归还任何页时也停止
+     */
+    private void reclaimSpace() {
+        if (dbManager.isIncrementalVacuumEnabled()) {
+            long previous = Long.MAX_VALUE;
+            for (int step = 0; step < MAX_VACUUM_STEPS && !stopping; step++) {
+                long remaining = dbManager.incrementalVacuum(VACUUM_PAGES_PER_STEP);
+                if (remaining <= 0 || remaining >= previous) {
+                    break;
+                }
+                previous = remaining;
+                pause();
+            }
+        }
+        dbManager.checkpoint();
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(PAUSE_BETWEEN_BATCHES_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopping = true;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * 上传文件保留策略。检测到隐写的文件只按自己的保留期限删除，不受总大小上限影响
+ * @param maxAge 未检测到隐写的文件保留时长，null 表示不限
+ * @param stegMaxAge 检测到隐写的文件保留时长，null 表示永久保留
+ * @param maxTotalBytes 未检测到隐写的文件总大小上限，0 表示不限
+ * @param interval 检查间隔
+ */
+public record RetentionPolicy(Duration maxAge, Duration stegMaxAge, long maxTotalBytes, Duration interval) {
+    private static final Logger logger = LoggerFactory.getLogger(RetentionPolicy.class);
+    private static final String POLICY_FILE = "/retention.properties";
+    private static final String SYSTEM_PROPERTY_PREFIX = "cryptalink.";
+
+    /** 是否配置了任何限制 */
+    public boolean isEnabled() {
+        return maxAge != null || stegMaxAge != null || maxTotalBytes > 0;
+    }
+
+    /**
+     * 从 retention.properties 读取策略，同名系统属性（加 cryptalink. 前缀）优先
+     */
+    public static RetentionPolicy load() {
+        Properties properties = new Properties();
+        try (InputStream input = RetentionPolicy.class.getResourceAsStream(POLICY_FILE)) {
+            if (input != null) {
+                properties.load(input);
+            }
+        } catch (IOException e) {
+            logger.error("加载保留策略失败: ", e);
+        }
+        long maxAgeDays = getLong(properties, "retention.max.age.days", 0);
+        long stegMaxAgeDays = getLong(properties, "retention.steg.max.age.days", 0);
+        long maxTotalMb = getLong(properties, "retention.max.total.mb", 0);
+        long intervalMinutes = Math.max(1, getLong(properties, "retention.interval.minutes", 10));
+        return new RetentionPolicy(
+            maxAgeDays > 0 ? Duration.ofDays(maxAgeDays) : null,
+            stegMaxAgeDays > 0 ? Duration.ofDays(stegMaxAgeDays) : null,
+            Math.max(0, maxTotalMb) * 1024 * 1024,
+            Duration.ofMinutes(intervalMinutes));
+    }
+
+    private static long getLong(Properties properties, String key, long defaultValue) {
+        String value = System.getProperty(SYSTEM_PROPERTY_PREFIX + key, properties.getProperty(key));
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("保留策略配置 {} 无效: {}", key, value);
+            return defaultValue;
+        }
+    }
+}
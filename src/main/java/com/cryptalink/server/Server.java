@@ -1,12 +1,20 @@
 package com.cryptalink.server;
 
+import com.cryptalink.common.DeltaSync;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
 import java.util.concurrent.*;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.UUID;
 
@@ -21,12 +29,14 @@ public class Server {
     private boolean running;
     private ServerEventHandler eventHandler;
     private final DatabaseManager dbManager;
+    private final RetentionJob retentionJob;
     
     public Server() {
         this.executorService = Executors.newCachedThreadPool();
         this.clients = new ConcurrentHashMap<>();
         this.running = false;
         this.dbManager = DatabaseManager.getInstance();
+        this.retentionJob = new RetentionJob(Paths.get("uploads"), RetentionPolicy.load());
     }
     
     public void setEventHandler(ServerEventHandler handler) {
@@ -41,6 +51,7 @@ public class Server {
         serverSocket = new ServerSocket(PORT);
         running = true;
         logger.info("服务器启动成功，监听端口: {}", PORT);
+        retentionJob.start();
         
         // 启动接受客户端连接的线程
         executorService.execute(() -> {
@@ -66,6 +77,7 @@ public class Server {
         }
         
         running = false;
+        retentionJob.stop();
         
         try {
             // 关闭所有客户端连接
@@ -163,7 +175,13 @@ public class Server {
                 } else if (line.startsWith("UPLOAD:")) {
                     // 处理文件上传
                     String filename = line.substring("UPLOAD:".length());
-                    handleFileUpload(filename, in, out, uploadsDir);
+                    handleFileUpload(clientId, filename, in, out, uploadsDir);
+                } else if (line.startsWith("GET_SIGNATURE:")) {
+                    // 发送已有文件的分块签名，供客户端计算增量
+                    sendSignature(line.substring("GET_SIGNATURE:".length()), out, uploadsDir);
+                } else if (line.startsWith("DELTA_UPLOAD:")) {
+                    // 用已有文件和客户端发来的增量重建新文件
+                    handleDeltaUpload(clientId, line.substring("DELTA_UPLOAD:".length()), in, out, uploadsDir);
                 }
             } catch (IOException e) {
                 if (running) {
@@ -174,8 +192,9 @@ public class Server {
         }
     }
     
-    private void handleFileUpload(String filename, BufferedReader in, PrintWriter out, File uploadsDir) throws IOException {
+    private void handleFileUpload(String clientId, String filename, BufferedReader in, PrintWriter out, File uploadsDir) throws IOException {
         logger.info("开始接收文件: {}", filename);
+        long receiveStart = System.nanoTime();
         StringBuilder base64Content = new StringBuilder();
         String line;
         
@@ -184,41 +203,267 @@ public class Server {
             if (line.equals("END_UPLOAD")) {
                 break;
             }
+            if (line.equals("ABORT_UPLOAD")) {
+                // 客户端取消上传，丢弃已接收的内容，连接继续可用
+                out.println("UPLOAD_ABORTED");
+                logger.info("客户端取消上传: {}", filename);
+                return;
+            }
             base64Content.append(line);
         }
+        if (line == null) {
+            // 连接在上传结束前断开，不保存不完整的文件，客户端重连后会重新上传
+            logger.warn("上传未完成，连接已断开: {}", filename);
+            return;
+        }
         
         try {
             // 解码Base64内容
             byte[] fileContent = org.apache.commons.codec.binary.Base64.decodeBase64(base64Content.toString());
+            long receiveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receiveStart);
             
-            // 保存文件
+            // 保存文件与隐写检测并行进行，检测直接使用内存中的数据，不再从磁盘读回
             File file = new File(uploadsDir, filename);
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                fos.write(fileContent);
-            }
+            Future<?> write = executorService.submit(() -> {
+                try (FileOutputStream fos = new FileOutputStream(file)) {
+                    fos.write(fileContent);
+                }
+                return null;
+            });
             
-            // 检查是否是BMP文件并进行隐写检测
+            // 按文件内容识别BMP或PNG图像并进行隐写检测，相同内容直接使用缓存的结果
             boolean hasSteg = false;
             String hiddenMessage = null;
-            if (filename.toLowerCase().endsWith(".bmp")) {
-                hasSteg = LSBSteganography.hasSteg(file.getPath());
-                if (hasSteg) {
-                    hiddenMessage = "检测到隐写信息";
-                }
+            long scanMillis = 0;
+            byte[] contentHash = VerdictCache.newDigest().digest(fileContent);
+            if (ImageFormat.detect(fileContent) != null) {
+                long scanStart = System.nanoTime();
+                StegVerdict verdict = VerdictCache.getInstance().detect(filename, fileContent, contentHash);
+                hasSteg = verdict.hasSteganography();
+                hiddenMessage = verdict.hiddenMessage();
+                scanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scanStart);
             }
+            awaitWrite(write);
             
-            // 保存文件信息到数据库
-            dbManager.saveFileInfo(filename, hasSteg, hiddenMessage);
-            
-            out.println("UPLOAD_SUCCESS");
-            logger.info("文件接收完成: {}", filename);
-            
-            if (eventHandler != null) {
-                eventHandler.onFileReceived(filename);
-            }
+            completeUpload(clientId, filename, hasSteg, hiddenMessage, fileContent.length, contentHash,
+                receiveMillis, scanMillis, out);
         } catch (Exception e) {
             logger.error("处理文件上传失败", e);
             out.println("UPLOAD_FAILED:" + e.getMessage());
         }
     }
+
+    /**
+     * 保存文件信息到数据库，通知客户端和界面
+     */
+    private void completeUpload(String clientId, String filename, boolean hasSteg, String hiddenMessage, long size,
+                                byte[] contentHash, long receiveMillis, long scanMillis, PrintWriter out) {
+        dbManager.saveFileInfo(new UploadRecord(filename, hasSteg, hiddenMessage, size,
+            HexFormat.of().formatHex(contentHash), clientId, receiveMillis, scanMillis));
+        
+        out.println("UPLOAD_SUCCESS");
+        logger.info("文件接收完成: {}", filename);
+        
+        if (eventHandler != null) {
+            eventHandler.onFileReceived(filename, hasSteg);
+        }
+    }
+
+    /**
+     * 上传目录中的文件，文件名包含路径、超出上传目录时返回 null
+     */
+    private static Path resolveUpload(File uploadsDir, String filename) {
+        Path dir = uploadsDir.toPath().toAbsolutePath().normalize();
+        Path file = dir.resolve(filename).normalize();
+        return file.getParent() != null && file.getParent().equals(dir) ? file : null;
+    }
+
+    /**
+     * 回复 SIGNATURE:块大小:文件长度:块数，随后是 Base64 编码的签名和 END_SIGNATURE；没有这个文件时回复 NO_SIGNATURE
+     */
+    private void sendSignature(String filename, PrintWriter out, File uploadsDir) {
+        Path file = resolveUpload(uploadsDir, filename);
+        if (file == null || !Files.isRegularFile(file)) {
+            out.println("NO_SIGNATURE");
+            return;
+        }
+        DeltaSync.Signature signature;
+        try {
+            long start = System.nanoTime();
+            signature = DeltaSync.signature(file);
+            logger.info("计算签名完成: {}，{} 块，耗时 {} 毫秒", filename, signature.blockCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            logger.error("计算签名失败: {}", filename, e);
+            out.println("NO_SIGNATURE");
+            return;
+        }
+        byte[] data = signature.toBytes();
+        out.println("SIGNATURE:" + signature.blockSize() + ":" + signature.length() + ":" + signature.blockCount());
+        // 每行 48KB，与上传的分块一致
+        int lineBytes = 48 * 1024;
+        for (int offset = 0; offset < data.length; offset += lineBytes) {
+            out.println(org.apache.commons.codec.binary.Base64.encodeBase64String(
+                Arrays.copyOfRange(data, offset, Math.min(data.length, offset + lineBytes))));
+        }
+        out.println("END_SIGNATURE");
+    }
+
+    /**
+     * 接收 DELTA_UPLOAD:文件名:块大小 之后的 COPY:首块:块数 和 DATA:Base64 指令，直到 END_DELTA:长度:SHA-256。
+     * 新文件先写入临时文件，长度和摘要与客户端给出的一致才替换原文件；指令出错时继续读到结束行再回复失败，连接保持可用
+     */
+    private void handleDeltaUpload(String clientId, String header, BufferedReader in, PrintWriter out, File uploadsDir) throws IOException {
+        long receiveStart = System.nanoTime();
+        int separator = header.lastIndexOf(':');
+        String filename = separator < 0 ? header : header.substring(0, separator);
+        logger.info("开始接收增量: {}", filename);
+        Path file = resolveUpload(uploadsDir, filename);
+        String error = null;
+        int blockSize = 0;
+        try {
+            blockSize = Integer.parseInt(header.substring(separator + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            error = "增量格式错误";
+        }
+        if (error == null && (blockSize < DeltaSync.MIN_BLOCK_SIZE || blockSize > DeltaSync.MAX_BLOCK_SIZE)) {
+            error = "块大小无效: " + blockSize;
+        }
+        if (error == null && file == null) {
+            error = "文件名无效";
+        }
+
+        Path temp = null;
+        DeltaSync.Patcher patcher = null;
+        if (error == null) {
+            try {
+                temp = Files.createTempFile(file.getParent(), ".delta-", ".tmp");
+                Path base = Files.isRegularFile(file) ? file : null;
+                patcher = new DeltaSync.Patcher(base, blockSize, new BufferedOutputStream(Files.newOutputStream(temp)));
+            } catch (IOException e) {
+                logger.error("创建临时文件失败", e);
+                error = "创建临时文件失败: " + e.getMessage();
+            }
+        }
+
+        String line;
+        try {
+            while ((line = in.readLine()) != null && !line.startsWith("END_DELTA:")) {
+                if (line.equals("ABORT_UPLOAD")) {
+                    out.println("UPLOAD_ABORTED");
+                    logger.info("客户端取消上传: {}", filename);
+                    return;
+                }
+                if (error != null) {
+                    continue;
+                }
+                try {
+                    applyDeltaLine(patcher, line);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("增量指令无效: {} ({})", filename, e.getMessage());
+                    error = e.getMessage();
+                }
+            }
+            if (line == null) {
+                logger.warn("上传未完成，连接已断开: {}", filename);
+                return;
+            }
+            if (error == null) {
+                patcher.close();
+                error = verifyDelta(patcher, line.substring("END_DELTA:".length()));
+            }
+            if (error != null) {
+                out.println("UPLOAD_FAILED:" + error);
+                return;
+            }
+
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+                LSBSteganography.invalidateCachedImage(file.toFile());
+                long receiveMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receiveStart);
+
+                // 只有图像需要读回内容进行隐写检测
+                byte[] contentHash = patcher.digest();
+                boolean hasSteg = false;
+                String hiddenMessage = null;
+                long scanMillis = 0;
+                if (ImageFormat.detect(file) != null) {
+                    long scanStart = System.nanoTime();
+                    StegVerdict verdict = VerdictCache.getInstance().detect(filename, Files.readAllBytes(file), contentHash);
+                    hasSteg = verdict.hasSteganography();
+                    hiddenMessage = verdict.hiddenMessage();
+                    scanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scanStart);
+                }
+                completeUpload(clientId, filename, hasSteg, hiddenMessage, patcher.length(), contentHash,
+                    receiveMillis, scanMillis, out);
+            } catch (IOException e) {
+                logger.error("处理增量上传失败", e);
+                out.println("UPLOAD_FAILED:" + e.getMessage());
+            }
+        } finally {
+            if (patcher != null) {
+                try {
+                    patcher.close();
+                } catch (IOException e) {
+                    logger.error("关闭临时文件失败", e);
+                }
+            }
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private static void applyDeltaLine(DeltaSync.Patcher patcher, String line) throws IOException {
+        if (line.startsWith("DATA:")) {
+            byte[] data = org.apache.commons.codec.binary.Base64.decodeBase64(line.substring("DATA:".length()));
+            patcher.literal(data, 0, data.length);
+        } else if (line.startsWith("COPY:")) {
+            String[] parts = line.split(":");
+            if (parts.length != 3) {
+                throw new IOException("增量指令格式错误: " + line);
+            }
+            patcher.copy(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } else {
+            throw new IOException("未知的增量指令: " + line);
+        }
+    }
+
+    /**
+     * 核对重建结果与客户端给出的长度和 SHA-256
+     * @return 一致时返回 null，否则返回失败原因
+     */
+    private static String verifyDelta(DeltaSync.Patcher patcher, String expected) {
+        int separator = expected.indexOf(':');
+        if (separator < 0) {
+            return "增量格式错误";
+        }
+        String length = expected.substring(0, separator);
+        String hash = expected.substring(separator + 1);
+        if (!length.equals(Long.toString(patcher.length()))) {
+            return "重建后长度不一致";
+        }
+        byte[] claimed;
+        try {
+            claimed = HexFormat.of().parseHex(hash);
+        } catch (IllegalArgumentException e) {
+            return "增量格式错误";
+        }
+        if (!MessageDigest.isEqual(patcher.digest(), claimed)) {
+            return "重建后校验失败";
+        }
+        return null;
+    }
+
+    private static void awaitWrite(Future<?> write) throws IOException, InterruptedException {
+        try {
+            write.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("保存文件失败", e.getCause());
+        }
+    }
 }
\ No newline at end of file
@@ -19,8 +19,9 @@ public interface ServerEventHandler {
     /**
      * 当收到文件时调用
      * @param filename 文件名
+     * @param hasSteganography 是否检测到隐写
      */
-    void onFileReceived(String filename);
+    void onFileReceived(String filename, boolean hasSteganography);
     
     /**
      * 当发生错误时调用
@@ -1,29 +1,63 @@
 package com.cryptalink.server;
 
+import com.cryptalink.common.LogView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class ServerGUI extends JFrame {
     private static final Logger logger = LoggerFactory.getLogger(ServerGUI.class);
+    private static final int CATALOG_PAGE_SIZE = 1000;
+    private static final int EVENT_FLUSH_INTERVAL_MS = 33; // 约每秒 30 帧
     
     private JTextArea logArea;
+    private LogView logView;
     private JList<String> clientList;
     private JList<String> fileList;
     private JButton startButton;
     private JButton stopButton;
     private JLabel statusLabel;
-    private DefaultListModel<String> clientListModel;
-    private DefaultListModel<String> fileListModel;
+    private IndexedListModel<String> clientListModel;
+    private FileCatalog fileCatalog;
+    private FileCatalogListModel fileListModel;
+    private JTextField fileFilterField;
+    private JPanel filePanel;
+    private TitledBorder fileBorder;
+    // 历史记录加载完成前收到的文件先暂存，加载完成后再追加，保持按上传顺序排列
+    private List<CatalogEntry> pendingFiles;
+
+    private record CatalogEntry(String filename, boolean hasSteganography) {
+    }
+
+    // 历史记录加载线程最后发布的标记，process 收到它时历史记录已全部追加
+    private static final CatalogEntry CATALOG_LOADED = new CatalogEntry(null, false);
+
+    private enum EventKind {
+        CLIENT_CONNECTED, CLIENT_DISCONNECTED, FILE_RECEIVED, ERROR
+    }
+
+    private record ServerEvent(EventKind kind, String value, boolean hasSteganography, long time) {
+    }
+
+    // 服务器线程产生的事件，由界面定时器在事件分发线程中批量取出
+    private final Queue<ServerEvent> pendingEvents = new ConcurrentLinkedQueue<>();
     private Server server;
     private SimpleDateFormat dateFormat;
     
@@ -34,8 +68,9 @@ public class ServerGUI extends JFrame {
         
         // 初始化组件
         dateFormat = new SimpleDateFormat("HH:mm:ss");
-        clientListModel = new DefaultListModel<>();
-        fileListModel = new DefaultListModel<>();
+        clientListModel = new IndexedListModel<>();
+        fileCatalog = new FileCatalog();
+        fileListModel = new FileCatalogListModel(fileCatalog);
         
         // 创建主面板
         JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
@@ -69,11 +104,14 @@ public class ServerGUI extends JFrame {
             @Override
             public void windowClosing(WindowEvent e) {
                 stopServer();
+                // 写完排队中的文件信息再退出
+                DatabaseManager.getInstance().close();
             }
         });
         
         // 初始化服务器
         initializeServer();
+        loadFileCatalog();
     }
     
     private JPanel createLeftPanel() {
@@ -89,11 +127,33 @@ public class ServerGUI extends JFrame {
         clientPanel.add(clientScrollPane);
         
         // 文件列表
-        JPanel filePanel = new JPanel(new BorderLayout());
-        filePanel.setBorder(BorderFactory.createTitledBorder("已上传文件"));
+        filePanel = new JPanel(new BorderLayout(0, 5));
+        fileBorder = BorderFactory.createTitledBorder("已上传文件");
+        filePanel.setBorder(fileBorder);
+        fileFilterField = new JTextField();
+        fileFilterField.setToolTipText("按文件名前缀过滤");
+        fileFilterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFileFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFileFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFileFilter();
+            }
+        });
         fileList = new JList<>(fileListModel);
         fileList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // 固定行高，列表不再逐行测量所有文件名，只绘制可见的行
+        fileList.setPrototypeCellValue("xxxxxxxxxxxxxxxxxxxxxxxx.png  [隐写]");
         JScrollPane fileScrollPane = new JScrollPane(fileList);
+        filePanel.add(fileFilterField, BorderLayout.NORTH);
         filePanel.add(fileScrollPane);
         
         panel.add(clientPanel);
@@ -110,6 +170,7 @@ public class ServerGUI extends JFrame {
         logArea.setEditable(false);
         logArea.setLineWrap(true);
         logArea.setWrapStyleWord(true);
+        logView = LogView.attach(logArea, "server");
         JScrollPane scrollPane = new JScrollPane(logArea);
         panel.add(scrollPane);
         
@@ -135,39 +196,70 @@ public class ServerGUI extends JFrame {
     private void initializeServer() {
         server = new Server();
         
-        // 设置服务器事件处理器
+        // 设置服务器事件处理器：事件只进入队列，由界面定时器按帧合并处理，连接频繁变化时界面也不会积压
         server.setEventHandler(new ServerEventHandler() {
             @Override
             public void onClientConnected(String clientId) {
-                SwingUtilities.invokeLater(() -> {
-                    clientListModel.addElement(clientId);
-                    log("客户端连接: " + clientId);
-                });
+                pendingEvents.add(new ServerEvent(EventKind.CLIENT_CONNECTED, clientId, false, System.currentTimeMillis()));
             }
             
             @Override
             public void onClientDisconnected(String clientId) {
-                SwingUtilities.invokeLater(() -> {
-                    clientListModel.removeElement(clientId);
-                    log("客户端断开连接: " + clientId);
-                });
+                pendingEvents.add(new ServerEvent(EventKind.CLIENT_DISCONNECTED, clientId, false, System.currentTimeMillis()));
             }
             
             @Override
-            public void onFileReceived(String filename) {
-                SwingUtilities.invokeLater(() -> {
-                    fileListModel.addElement(filename);
-                    log("收到文件: " + filename);
-                });
+            public void onFileReceived(String filename, boolean hasSteganography) {
+                pendingEvents.add(new ServerEvent(EventKind.FILE_RECEIVED, filename, hasSteganography, System.currentTimeMillis()));
             }
             
             @Override
             public void onError(String error) {
-                SwingUtilities.invokeLater(() -> {
-                    log("错误: " + error);
-                });
+                pendingEvents.add(new ServerEvent(EventKind.ERROR, error, false, System.currentTimeMillis()));
             }
         });
+        new Timer(EVENT_FLUSH_INTERVAL_MS, e -> flushServerEvents()).start();
+    }
+
+    /**
+     * 处理上一帧以来积累的服务器事件：同一帧内连接又断开的客户端不再出现在列表中，
+     * 列表每帧更新一次，日志由 LogView 合并追加
+     */
+    private void flushServerEvents() {
+        if (pendingEvents.isEmpty()) {
+            return;
+        }
+        Set<String> connected = new LinkedHashSet<>();
+        List<String> disconnected = new ArrayList<>();
+        List<CatalogEntry> files = new ArrayList<>();
+        ServerEvent event;
+        while ((event = pendingEvents.poll()) != null) {
+            String message = switch (event.kind()) {
+                case CLIENT_CONNECTED -> {
+                    connected.add(event.value());
+                    yield "客户端连接: " + event.value();
+                }
+                case CLIENT_DISCONNECTED -> {
+                    if (!connected.remove(event.value())) {
+                        disconnected.add(event.value());
+                    }
+                    yield "客户端断开连接: " + event.value();
+                }
+                case FILE_RECEIVED -> {
+                    files.add(new CatalogEntry(event.value(), event.hasSteganography()));
+                    yield "收到文件: " + event.value();
+                }
+                case ERROR -> "错误: " + event.value();
+            };
+            logView.append(formatLogLine(new Date(event.time()), message));
+        }
+
+        clientListModel.removeAll(disconnected);
+        clientListModel.addAll(connected);
+        if (!files.isEmpty()) {
+            addReceivedFiles(files);
+            updateCacheStatus();
+        }
     }
     
     private void startServer() {
@@ -191,20 +283,100 @@ public class ServerGUI extends JFrame {
             statusLabel.setText("服务器已停止");
             log("服务器已停止");
             
-            // 清空列表
+            // 清空客户端列表，文件目录是历史记录，保留
             clientListModel.clear();
-            fileListModel.clear();
         } catch (Exception e) {
             logger.error("停止服务器失败", e);
             showError("停止服务器失败: " + e.getMessage());
         }
     }
     
+    /**
+     * 在后台分页读取数据库中的全部上传记录，按批追加到文件目录，界面在加载期间保持响应
+     */
+    private void loadFileCatalog() {
+        pendingFiles = new ArrayList<>();
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        new SwingWorker<Integer, CatalogEntry>() {
+            @Override
+            protected Integer doInBackground() {
+                // 只加载打开窗口时已有的记录，之后的上传通过事件追加
+                long upToId = dbManager.maxFileInfoId();
+                long[] lastId = {0};
+                int loaded = 0;
+                int count;
+                try {
+                    do {
+                        count = dbManager.fileInfoAfter(lastId[0], upToId, CATALOG_PAGE_SIZE, info -> {
+                            lastId[0] = info.id();
+                            publish(new CatalogEntry(info.filename(), info.hasSteganography()));
+                        });
+                        loaded += Math.max(0, count);
+                    } while (count == CATALOG_PAGE_SIZE);
+                } finally {
+                    // done 可能在最后一批 process 之前执行，暂存的文件只能在标记到达时追加
+                    publish(CATALOG_LOADED);
+                }
+                return loaded;
+            }
+
+            @Override
+            protected void process(List<CatalogEntry> chunk) {
+                if (chunk.get(chunk.size() - 1) != CATALOG_LOADED) {
+                    addFiles(chunk);
+                    return;
+                }
+                addFiles(chunk.subList(0, chunk.size() - 1));
+                List<CatalogEntry> pending = pendingFiles;
+                pendingFiles = null;
+                addFiles(pending);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    log("已加载 " + get() + " 条上传记录");
+                } catch (Exception e) {
+                    logger.error("加载上传记录失败", e);
+                }
+            }
+        }.execute();
+    }
+
+    private void addReceivedFiles(List<CatalogEntry> entries) {
+        if (pendingFiles != null) {
+            pendingFiles.addAll(entries);
+        } else {
+            addFiles(entries);
+        }
+    }
+
+    private void addFiles(List<CatalogEntry> entries) {
+        int from = fileCatalog.size();
+        for (CatalogEntry entry : entries) {
+            fileCatalog.add(entry.filename(), entry.hasSteganography());
+        }
+        fileListModel.entriesAdded(from);
+        fileBorder.setTitle("已上传文件 (" + fileCatalog.size() + ")");
+        filePanel.repaint();
+    }
+
+    private void applyFileFilter() {
+        fileListModel.setPrefix(fileFilterField.getText());
+    }
+
+    private void updateCacheStatus() {
+        VerdictCache.Stats stats = VerdictCache.getInstance().getStats();
+        statusLabel.setText(String.format("服务器运行中 | 检测结果缓存命中率 %.1f%% (内存 %d，数据库 %d，未命中 %d)",
+            stats.hitRatio() * 100, stats.memoryHits(), stats.databaseHits(), stats.misses()));
+    }
+
     private void log(String message) {
-        String timestamp = dateFormat.format(new Date());
-        logArea.append(String.format("[%s] %s%n", timestamp, message));
-        // 滚动到最新的日志
-        logArea.setCaretPosition(logArea.getDocument().getLength());
+        logView.append(formatLogLine(new Date(), message));
+    }
+
+    private String formatLogLine(Date time, String message) {
+        return String.format("[%s] %s", dateFormat.format(time), message);
     }
     
     private void showError(String message) {
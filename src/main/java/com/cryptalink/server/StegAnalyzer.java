@@ -0,0 +1,331 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * LSB 隐写统计分析：卡方检验（值对直方图）与 RS 分析。
+ * 两种统计量所需的计数在一次逐行扫描中完成，计数全部使用基本类型数组；
+ * 图像按行切分成条带并行统计，最后合并。
+ */
+public class StegAnalyzer {
+    private static final Logger logger = LoggerFactory.getLogger(StegAnalyzer.class);
+    /** 检测算法版本，判定逻辑变化时递增，使按内容哈希缓存的旧结果失效 */
+    public static final int DETECTOR_VERSION = 1;
+    private static final int MIN_STRIP_PIXELS = 64 * 1024;   // 每个条带至少包含的像素数
+    private static final double MIN_EXPECTED_COUNT = 5.0;    // 卡方检验中值对的最小期望频数
+    private static final double CHI_SQUARE_THRESHOLD = 0.95; // 卡方检验判定为隐写的概率阈值
+    private static final double RS_THRESHOLD = 0.08;         // RS 估计嵌入率的判定阈值
+
+    // RS 计数下标：原图 R_M, S_M, R_-M, S_-M，以及全部 LSB 翻转后的同样四项
+    private static final int RM = 0, SM = 1, RN = 2, SN = 3, FLIPPED = 4;
+
+    /**
+     * 分析结果
+     * @param chiSquare 卡方统计量
+     * @param chiSquareProbability 卡方检验给出的嵌入概率，越接近 1 越可疑
+     * @param rsEstimate RS 分析估计的嵌入率（0~1）
+     */
+    public record Result(double chiSquare, double chiSquareProbability, double rsEstimate) {
+        public boolean isSuspicious() {
+            return chiSquareProbability > CHI_SQUARE_THRESHOLD || rsEstimate > RS_THRESHOLD;
+        }
+    }
+
+    /**
+     * 服务器与批量扫描共用的检测规则：只检测按魔数识别为 BMP 或 PNG 的文件，
+     * 先检查本系统写入的检测标记，再做统计分析
+     */
+    public static StegVerdict detect(String filename, Path file) throws IOException {
+        if (ImageFormat.detect(file) == null) {
+            return new StegVerdict(filename, false, null);
+        }
+        return detect(filename, ImageDecoder.read(file.toFile()));
+    }
+
+    /**
+     * 检测内存中的文件内容，规则与 {@link #detect(String, Path)} 相同，不需要先写入磁盘
+     */
+    public static StegVerdict detect(String filename, byte[] data) throws IOException {
+        if (ImageFormat.detect(data) == null) {
+            return new StegVerdict(filename, false, null);
+        }
+        return detect(filename, ImageDecoder.decode(data));
+    }
+
+    private static StegVerdict detect(String filename, BufferedImage image) {
+        if (image == null) {
+            return new StegVerdict(filename, false, null);
+        }
+        if (LSBSteganography.hasSteg(image)) {
+            return new StegVerdict(filename, true, "检测到隐写信息");
+        }
+        Result result = analyze(image);
+        logger.debug("统计分析结果 {}: {}", filename, result);
+        if (result.isSuspicious()) {
+            return new StegVerdict(filename, true, String.format("检测到疑似LSB隐写（RS估计嵌入率 %.2f，卡方概率 %.3f）",
+                result.rsEstimate(), result.chiSquareProbability()));
+        }
+        return new StegVerdict(filename, false, null);
+    }
+
+    public static Result analyze(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowsPerStrip = Math.max(1, MIN_STRIP_PIXELS / Math.max(width, 1));
+        int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+
+        Counts total = IntStream.range(0, strips)
+            .parallel()
+            .mapToObj(strip -> countStrip(image, strip * rowsPerStrip, Math.min(height, (strip + 1) * rowsPerStrip)))
+            .reduce(Counts::merge)
+            .orElseGet(Counts::new);
+
+        double chiSquare = 0;
+        int pairs = 0;
+        for (int i = 0; i < total.histogram.length; i += 2) {
+            double expected = (total.histogram[i] + total.histogram[i + 1]) / 2.0;
+            if (expected >= MIN_EXPECTED_COUNT) {
+                double diff = total.histogram[i] - expected;
+                chiSquare += diff * diff / expected;
+                pairs++;
+            }
+        }
+        double probability = pairs > 1 ? upperRegularizedGamma((pairs - 1) / 2.0, chiSquare / 2.0) : 0.0;
+        return new Result(chiSquare, probability, rsEstimate(total.rs));
+    }
+
+    /**
+     * 一次扫描条带内所有行，同时累计三个通道的直方图和 RS 分组计数
+     */
+    private static Counts countStrip(BufferedImage image, int fromRow, int toRow) {
+        Counts counts = new Counts();
+        RowReader reader = RowReader.forImage(image);
+        int width = image.getWidth();
+        int[] red = new int[width];
+        int[] green = new int[width];
+        int[] blue = new int[width];
+        long[] histogram = counts.histogram;
+        for (int y = fromRow; y < toRow; y++) {
+            reader.read(y, red, green, blue);
+            for (int x = 0; x < width; x++) {
+                histogram[red[x]]++;
+                histogram[256 + green[x]]++;
+                histogram[512 + blue[x]]++;
+            }
+            countGroups(red, width, counts.rs);
+            countGroups(green, width, counts.rs);
+            countGroups(blue, width, counts.rs);
+        }
+        return counts;
+    }
+
+    /**
+     * RS 分析：每 4 个水平相邻的样本为一组，掩码 [0, 1, 1, 0]
+     */
+    private static void countGroups(int[] samples, int width, long[] rs) {
+        for (int x = 0; x + 3 < width; x += 4) {
+            int a = samples[x], b = samples[x + 1], c = samples[x + 2], d = samples[x + 3];
+            classify(a, b, c, d, rs, 0);
+            classify(a ^ 1, b ^ 1, c ^ 1, d ^ 1, rs, FLIPPED);
+        }
+    }
+
+    private static void classify(int a, int b, int c, int d, long[] rs, int offset) {
+        int f = smoothness(a, b, c, d);
+        int positive = smoothness(a, b ^ 1, c ^ 1, d);
+        int negative = smoothness(a, shiftFlip(b), shiftFlip(c), d);
+        if (positive > f) {
+            rs[offset + RM]++;
+        } else if (positive < f) {
+            rs[offset + SM]++;
+        }
+        if (negative > f) {
+            rs[offset + RN]++;
+        } else if (negative < f) {
+            rs[offset + SN]++;
+        }
+    }
+
+    /** F-1 翻转：-1↔0, 1↔2, 3↔4 ... */
+    private static int shiftFlip(int value) {
+        return ((value + 1) ^ 1) - 1;
+    }
+
+    private static int smoothness(int a, int b, int c, int d) {
+        return Math.abs(b - a) + Math.abs(c - b) + Math.abs(d - c);
+    }
+
+    /**
+     * 由原图和全部翻转后的 R/S 计数解二次方程，估计嵌入率
+     */
+    private static double rsEstimate(long[] rs) {
+        double d0 = rs[RM] - rs[SM];
+        double d1 = rs[FLIPPED + RM] - rs[FLIPPED + SM];
+        double n0 = rs[RN] - rs[SN];
+        double n1 = rs[FLIPPED + RN] - rs[FLIPPED + SN];
+        double a = 2 * (d1 + d0);
+        double b = n0 - n1 - d1 - 3 * d0;
+        double c = d0 - n0;
+
+        double x;
+        if (Math.abs(a) < 1e-9) {
+            if (Math.abs(b) < 1e-9) {
+                return 0.0;
+            }
+            x = -c / b;
+        } else {
+            double discriminant = b * b - 4 * a * c;
+            if (discriminant < 0) {
+                return 0.0;
+            }
+            double root = Math.sqrt(discriminant);
+            double x1 = (-b + root) / (2 * a);
+            double x2 = (-b - root) / (2 * a);
+            x = Math.abs(x1) < Math.abs(x2) ? x1 : x2;
+        }
+        double estimate = x / (x - 0.5);
+        return Double.isFinite(estimate) ? Math.max(0.0, Math.min(1.0, estimate)) : 0.0;
+    }
+
+    /**
+     * 上侧正则化不完全伽马函数 Q(a, x)，即自由度 2a 的卡方分布在 2x 处的上尾概率
+     */
+    private static double upperRegularizedGamma(double a, double x) {
+        if (x <= 0) {
+            return 1.0;
+        }
+        double logPrefix = -x + a * Math.log(x) - logGamma(a);
+        if (x < a + 1) {
+            // 级数展开求 P(a, x)
+            double term = 1.0 / a;
+            double sum = term;
+            for (int n = 1; n < 1000; n++) {
+                term *= x / (a + n);
+                sum += term;
+                if (Math.abs(term) < Math.abs(sum) * 1e-15) {
+                    break;
+                }
+            }
+            return Math.max(0.0, 1.0 - sum * Math.exp(logPrefix));
+        }
+        // 连分式求 Q(a, x)
+        double b = x + 1 - a;
+        double c = 1.0 / Double.MIN_NORMAL;
+        double d = 1.0 / b;
+        double h = d;
+        for (int n = 1; n < 1000; n++) {
+            double an = -n * (n - a);
+            b += 2;
+            d = an * d + b;
+            if (Math.abs(d) < Double.MIN_NORMAL) {
+                d = Double.MIN_NORMAL;
+            }
+            c = b + an / c;
+            if (Math.abs(c) < Double.MIN_NORMAL) {
+                c = Double.MIN_NORMAL;
+            }
+            d = 1.0 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1.0) < 1e-15) {
+                break;
+            }
+        }
+        return Math.exp(logPrefix) * h;
+    }
+
+    /** Lanczos 近似 */
+    private static double logGamma(double x) {
+        double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+            -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : coefficients) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    private static final class Counts {
+        final long[] histogram = new long[3 * 256];
+        final long[] rs = new long[8];
+
+        Counts merge(Counts other) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            for (int i = 0; i < rs.length; i++) {
+                rs[i] += other.rs[i];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * 按行读取 R/G/B 样本。常见的字节交错（24位BMP）和整数打包格式直接读取底层数组，其余格式退回 getRGB
+     */
+    private interface RowReader {
+        void read(int y, int[] red, int[] green, int[] blue);
+
+        static RowReader forImage(BufferedImage image) {
+            WritableRaster raster = image.getRaster();
+            DataBuffer buffer = raster.getDataBuffer();
+            boolean untranslated = raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+            if (untranslated && raster.getNumBands() >= 3 && buffer instanceof DataBufferByte bytes
+                    && raster.getSampleModel() instanceof ComponentSampleModel model && model.getSampleSize(0) == 8) {
+                byte[] data = bytes.getData();
+                int base = bytes.getOffset();
+                int pixelStride = model.getPixelStride();
+                int scanlineStride = model.getScanlineStride();
+                int[] offsets = model.getBandOffsets();
+                return (y, red, green, blue) -> {
+                    int index = base + y * scanlineStride;
+                    for (int x = 0; x < red.length; x++, index += pixelStride) {
+                        red[x] = data[index + offsets[0]] & 0xFF;
+                        green[x] = data[index + offsets[1]] & 0xFF;
+                        blue[x] = data[index + offsets[2]] & 0xFF;
+                    }
+                };
+            }
+            if (untranslated && buffer instanceof DataBufferInt ints
+                    && raster.getSampleModel() instanceof SinglePixelPackedSampleModel model
+                    && (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_INT_ARGB)) {
+                int[] data = ints.getData();
+                int base = ints.getOffset();
+                int scanlineStride = model.getScanlineStride();
+                return (y, red, green, blue) -> {
+                    int index = base + y * scanlineStride;
+                    for (int x = 0; x < red.length; x++) {
+                        int pixel = data[index + x];
+                        red[x] = (pixel >> 16) & 0xFF;
+                        green[x] = (pixel >> 8) & 0xFF;
+                        blue[x] = pixel & 0xFF;
+                    }
+                };
+            }
+            int[] row = new int[image.getWidth()];
+            return (y, red, green, blue) -> {
+                image.getRGB(0, y, row.length, 1, row, 0, row.length);
+                for (int x = 0; x < row.length; x++) {
+                    red[x] = (row[x] >> 16) & 0xFF;
+                    green[x] = (row[x] >> 8) & 0xFF;
+                    blue[x] = row[x] & 0xFF;
+                }
+            };
+        }
+    }
+}
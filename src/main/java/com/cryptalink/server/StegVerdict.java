@@ -0,0 +1,10 @@
+package com.cryptalink.server;
+
+/**
+ * 单个文件的隐写检测结果
+ * @param filename 文件名（相对于上传目录）
+ * @param hasSteganography 是否检测到隐写
+ * @param hiddenMessage 检测说明，未检测到时为 null
+ */
+public record StegVerdict(String filename, boolean hasSteganography, String hiddenMessage) {
+}
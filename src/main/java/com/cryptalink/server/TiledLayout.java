@@ -0,0 +1,227 @@
+package com.cryptalink.server;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * 分段位布局：把帧数据按 {@link #SEGMENT_BYTES} 切分成若干段，每段只在图像中属于自己的一段连续像素区间内
+ * 随机选位，随机数由种子派生的 {@link SplittableRandom} 依次 split 得到。
+ * 各段之间互不依赖，因此可以在 ForkJoin 线程池中并行嵌入与提取，且结果与逐段顺序处理完全一致；
+ * 也可以每次只处理一个从段边界开始的窗口，用于流式读写大载荷。
+ *
+ * <p>像素数组为 0x00RRGGBB（或带 alpha 的 ARGB），位置编号与原有格式相同：position = 像素下标 * 3 + 颜色分量。
+ * 每个位置可以承载颜色分量的低 1~4 位，每次访问像素读写多位，容量和吞吐随位数成倍增加。
+ */
+final class TiledLayout {
+    /** 每段承载的帧字节数 */
+    static final int SEGMENT_BYTES = 8 * 1024;
+
+    private final int pixelCount;
+    private final int frameLength;
+    private final int bitsPerChannel;
+    private final int segments;
+    private final int[] reserved;
+    private final SplittableRandom[] randoms;
+
+    /**
+     * @param pixelCount 像素总数
+     * @param frameLength 帧长度（字节）
+     * @param bitsPerChannel 每个位置使用的低位数（1~4）
+     * @param seed 种子
+     * @param reserved 升序排列的保留位置（文件头、检测标记），这些位置不会被分段使用
+     */
+    TiledLayout(int pixelCount, int frameLength, int bitsPerChannel, long seed, int[] reserved) {
+        this.pixelCount = pixelCount;
+        this.frameLength = frameLength;
+        this.bitsPerChannel = bitsPerChannel;
+        this.segments = (frameLength + SEGMENT_BYTES - 1) / SEGMENT_BYTES;
+        this.reserved = reserved;
+
+        // 按段号顺序 split，派生结果只取决于种子和段数，与并行度无关
+        SplittableRandom root = new SplittableRandom(seed);
+        this.randoms = new SplittableRandom[segments];
+        for (int i = 0; i < segments; i++) {
+            randoms[i] = root.split();
+        }
+    }
+
+    static boolean fits(int pixelCount, int frameLength, int bitsPerChannel, int[] reserved) {
+        return new TiledLayout(pixelCount, frameLength, bitsPerChannel, 0L, reserved).fits();
+    }
+
+    static void embed(int[] pixels, byte[] frame, int bitsPerChannel, long seed, int[] reserved) {
+        new TiledLayout(pixels.length, frame.length, bitsPerChannel, seed, reserved).embed(pixels, frame, 0, frame.length);
+    }
+
+    static byte[] extract(int[] pixels, int frameLength, int bitsPerChannel, long seed, int[] reserved) {
+        byte[] frame = new byte[frameLength];
+        new TiledLayout(pixels.length, frameLength, bitsPerChannel, seed, reserved).extract(pixels, frame, 0, frameLength);
+        return frame;
+    }
+
+    /**
+     * 检查每段对应的像素区间除去保留位置后是否足够容纳该段
+     */
+    boolean fits() {
+        for (int segment = 0; segment < segments; segment++) {
+            int start = regionStart(segment) * 3;
+            int end = regionStart(segment + 1) * 3;
+            int available = end - start - countInRange(reserved, start, end);
+            if (available < segmentPositions(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 嵌入帧中从段 firstSegment 开始的一个窗口
+     * @param window 窗口数据，window[0] 对应帧偏移 firstSegment * SEGMENT_BYTES
+     * @param length 窗口长度，除最后一个窗口外必须是 SEGMENT_BYTES 的整数倍
+     */
+    void embed(int[] pixels, byte[] window, int firstSegment, int length) {
+        int bits = bitsPerChannel;
+        int mask = (1 << bits) - 1;
+        run(firstSegment, windowSegments(firstSegment, length), segment -> {
+            PositionSequence positions = positions(segment);
+            int byteIndex = (segment - firstSegment) * SEGMENT_BYTES;
+            int byteEnd = byteIndex + segmentBits(segment) / 8;
+            long buffer = 0;
+            int buffered = 0;
+            for (int remaining = segmentPositions(segment); remaining > 0; remaining--) {
+                // 从最高位开始按字节补充位缓冲，最后一个位置不足的位补 0
+                while (buffered < bits) {
+                    buffer = (buffer << 8) | (byteIndex < byteEnd ? window[byteIndex++] & 0xFF : 0);
+                    buffered += 8;
+                }
+                buffered -= bits;
+                int value = (int) (buffer >>> buffered) & mask;
+                int position = positions.next();
+                int pixelIndex = position / 3;
+                int shift = 16 - 8 * (position % 3);
+                pixels[pixelIndex] = (pixels[pixelIndex] & ~(mask << shift)) | (value << shift);
+            }
+        });
+    }
+
+    /**
+     * 提取帧中从段 firstSegment 开始的一个窗口，参数含义同 {@link #embed(int[], byte[], int, int)}
+     */
+    void extract(int[] pixels, byte[] window, int firstSegment, int length) {
+        int bits = bitsPerChannel;
+        int mask = (1 << bits) - 1;
+        run(firstSegment, windowSegments(firstSegment, length), segment -> {
+            PositionSequence positions = positions(segment);
+            int byteIndex = (segment - firstSegment) * SEGMENT_BYTES;
+            int byteEnd = byteIndex + segmentBits(segment) / 8;
+            long buffer = 0;
+            int buffered = 0;
+            for (int remaining = segmentPositions(segment); remaining > 0; remaining--) {
+                int position = positions.next();
+                int shift = 16 - 8 * (position % 3);
+                buffer = (buffer << bits) | ((pixels[position / 3] >>> shift) & mask);
+                buffered += bits;
+                while (buffered >= 8 && byteIndex < byteEnd) {
+                    buffered -= 8;
+                    window[byteIndex++] = (byte) (buffer >>> buffered);
+                }
+            }
+        });
+    }
+
+    private int windowSegments(int firstSegment, int length) {
+        int count = (length + SEGMENT_BYTES - 1) / SEGMENT_BYTES;
+        if (firstSegment + count > segments
+                || (length % SEGMENT_BYTES != 0 && firstSegment * SEGMENT_BYTES + length != frameLength)) {
+            throw new IllegalArgumentException("窗口未按段对齐: firstSegment=" + firstSegment + ", length=" + length);
+        }
+        return count;
+    }
+
+    private PositionSequence positions(int segment) {
+        return new PositionSequence(randoms[segment], regionStart(segment) * 3, regionStart(segment + 1) * 3, reserved);
+    }
+
+    private int segmentBits(int segment) {
+        return Math.min(SEGMENT_BYTES, frameLength - segment * SEGMENT_BYTES) * 8;
+    }
+
+    private int segmentPositions(int segment) {
+        return (segmentBits(segment) + bitsPerChannel - 1) / bitsPerChannel;
+    }
+
+    /** 段的像素区间按像素对齐，保证并行写入时不同段不会修改同一个像素 */
+    private int regionStart(int segment) {
+        return (int) ((long) pixelCount * segment / segments);
+    }
+
+    private static void run(int firstSegment, int count, IntConsumer body) {
+        if (count == 1) {
+            body.accept(firstSegment);
+        } else if (count > 1) {
+            ForkJoinPool.commonPool().invoke(new SegmentTask(firstSegment, firstSegment + count, body));
+        }
+    }
+
+    private static int countInRange(int[] sorted, int from, int to) {
+        return lowerBound(sorted, to) - lowerBound(sorted, from);
+    }
+
+    private static int lowerBound(int[] sorted, int key) {
+        int index = Arrays.binarySearch(sorted, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /** 段内不重复的随机位置序列，保留位置预先标记为已使用 */
+    private static final class PositionSequence {
+        private final SplittableRandom random;
+        private final int start;
+        private final int length;
+        private final long[] used;
+
+        PositionSequence(SplittableRandom random, int start, int end, int[] reserved) {
+            this.random = random;
+            this.start = start;
+            this.length = end - start;
+            this.used = new long[(length + 63) >>> 6];
+            for (int i = lowerBound(reserved, start); i < reserved.length && reserved[i] < end; i++) {
+                int offset = reserved[i] - start;
+                used[offset >>> 6] |= 1L << offset;
+            }
+        }
+
+        int next() {
+            int offset;
+            do {
+                offset = random.nextInt(length);
+            } while ((used[offset >>> 6] & (1L << offset)) != 0);
+            used[offset >>> 6] |= 1L << offset;
+            return start + offset;
+        }
+    }
+
+    private static final class SegmentTask extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IntConsumer body;
+
+        SegmentTask(int from, int to, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                body.accept(from);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SegmentTask(from, mid, body), new SegmentTask(mid, to, body));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.cryptalink.server;
+
+/**
+ * 一次上传要写入数据库的信息
+ * @param filename 文件名（相对于上传目录）
+ * @param hasSteganography 是否检测到隐写
+ * @param hiddenMessage 检测说明，未检测到时为 null
+ * @param size 文件大小（字节）
+ * @param contentHash 文件内容的 SHA-256 摘要（十六进制）
+ * @param clientId 上传文件的客户端标识
+ * @param receiveMillis 接收并解码文件内容的耗时（毫秒）
+ * @param scanMillis 隐写检测的耗时（毫秒），未检测时为 0
+ */
+public record UploadRecord(String filename, boolean hasSteganography, String hiddenMessage, long size,
+                           String contentHash, String clientId, long receiveMillis, long scanMillis) {
+}
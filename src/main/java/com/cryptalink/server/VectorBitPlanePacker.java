@@ -0,0 +1,46 @@
+package com.cryptalink.server;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 jdk.incubator.vector 的位平面打包，每次处理一整个向量的样本。
+ * 只在启动参数包含 {@code --add-modules jdk.incubator.vector} 时由 {@link BitPlane} 通过反射加载。
+ *
+ * <p>取最低位后把字节向量按 long 重新解释，每个 long 中的 8 个 0/1 字节乘以 0x0102040810204080
+ * 再右移 56 位即得到打包好的 8 位（第 j 个字节对应第 j 位），各 long 移到各自的位置后按位或合并。
+ * 没有使用 VectorMask.toLong()，它在 JDK 17 上没有内联实现，比标量循环还慢。
+ */
+final class VectorBitPlanePacker implements BitPlane.Packer {
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final long PACK_MULTIPLIER = 0x0102040810204080L;
+    private static final LongVector LANE_SHIFTS = LongVector.zero(LONGS).addIndex(8);
+
+    VectorBitPlanePacker() {
+        // 字节向量最多 64 个通道时，一个向量打包出的位正好落在一个 long 内
+        if (BYTES.vectorBitSize() != LONGS.vectorBitSize() || BYTES.length() > 64) {
+            throw new IllegalStateException("不支持的向量长度: " + BYTES);
+        }
+    }
+
+    @Override
+    public void pack(byte[] samples, int offset, int length, long[] bits) {
+        int lanes = BYTES.length();
+        int upper = BYTES.loopBound(length);
+        int i = 0;
+        for (; i < upper; i += lanes) {
+            long word = ByteVector.fromArray(BYTES, samples, offset + i)
+                .and((byte) 1)
+                .reinterpretAsLongs()
+                .mul(PACK_MULTIPLIER)
+                .lanewise(VectorOperators.LSHR, 56)
+                .lanewise(VectorOperators.LSHL, LANE_SHIFTS)
+                .reduceLanes(VectorOperators.OR);
+            bits[i >>> 6] |= word << (i & 63);
+        }
+        BitPlane.packScalar(samples, offset, i, length, bits);
+    }
+}
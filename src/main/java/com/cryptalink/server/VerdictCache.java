@@ -0,0 +1,114 @@
+package com.cryptalink.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按文件内容哈希缓存隐写检测结果。同一张图片以不同文件名、从不同客户端多次上传时只检测一次。
+ * 第一级是有容量上限的内存 LRU，第二级持久化在数据库中，服务器重启后仍然有效。
+ */
+public class VerdictCache {
+    private static final Logger logger = LoggerFactory.getLogger(VerdictCache.class);
+    private static final int MEMORY_CAPACITY = 10_000;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static VerdictCache instance;
+
+    private final DatabaseManager dbManager;
+    private final Map<String, StegVerdict> memory;
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 缓存命中统计
+     */
+    public record Stats(long memoryHits, long databaseHits, long misses) {
+        public long lookups() {
+            return memoryHits + databaseHits + misses;
+        }
+
+        public double hitRatio() {
+            long lookups = lookups();
+            return lookups == 0 ? 0.0 : (double) (memoryHits + databaseHits) / lookups;
+        }
+    }
+
+    private VerdictCache() {
+        this.dbManager = DatabaseManager.getInstance();
+        this.memory = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StegVerdict> eldest) {
+                return size() > MEMORY_CAPACITY;
+            }
+        };
+    }
+
+    public static synchronized VerdictCache getInstance() {
+        if (instance == null) {
+            instance = new VerdictCache();
+        }
+        return instance;
+    }
+
+    /**
+     * 创建计算内容哈希用的摘要
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM 不支持 " + DIGEST_ALGORITHM, e);
+        }
+    }
+
+    /**
+     * 获取文件的检测结果：先查内存，再查数据库，都未命中时才解码检测，并把结果写入两级缓存
+     * @param content 文件内容，检测直接在内存中进行
+     * @param contentHash 文件内容的 SHA-256 摘要
+     */
+    public StegVerdict detect(String filename, byte[] content, byte[] contentHash) throws IOException {
+        String key = HexFormat.of().formatHex(contentHash);
+
+        StegVerdict cached;
+        synchronized (memory) {
+            cached = memory.get(key);
+        }
+        if (cached != null) {
+            memoryHits.incrementAndGet();
+            logger.debug("隐写检测结果命中内存缓存: {}", filename);
+            return new StegVerdict(filename, cached.hasSteganography(), cached.hiddenMessage());
+        }
+
+        cached = dbManager.loadVerdict(key);
+        if (cached != null) {
+            databaseHits.incrementAndGet();
+            logger.debug("隐写检测结果命中数据库缓存: {}", filename);
+            remember(key, cached);
+            return new StegVerdict(filename, cached.hasSteganography(), cached.hiddenMessage());
+        }
+
+        misses.incrementAndGet();
+        StegVerdict verdict = StegAnalyzer.detect(filename, content);
+        remember(key, verdict);
+        dbManager.saveVerdict(key, verdict);
+        return verdict;
+    }
+
+    private void remember(String key, StegVerdict verdict) {
+        synchronized (memory) {
+            memory.put(key, verdict);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(memoryHits.get(), databaseHits.get(), misses.get());
+    }
+}
@@ -1,5 +1,5 @@
 @echo off
 chcp 65001
 echo 正在启动客户端...
-java -jar target/gui/cryptalink-gui.jar
+java --add-modules jdk.incubator.vector -jar target/gui/cryptalink-gui.jar
 pause 
\ No newline at end of file
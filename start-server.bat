@@ -1,5 +1,5 @@
 @echo off
 chcp 65001
 echo 正在启动服务器...
-java -jar target/cryptalink-server-jar-with-dependencies.jar
+java --add-modules jdk.incubator.vector -jar target/cryptalink-server-jar-with-dependencies.jar
 pause 
\ No newline at end of file
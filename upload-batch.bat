@@ -0,0 +1,4 @@
+@echo off
+chcp 65001 > nul
+java --add-modules jdk.incubator.vector -cp target/cryptalink-server-jar-with-dependencies.jar com.cryptalink.client.Client %*
+exit /b %errorlevel%
\ No newline at end of file